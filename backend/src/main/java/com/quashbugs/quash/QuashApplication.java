@@ -7,10 +7,12 @@ import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
 import org.springframework.data.mongodb.repository.config.EnableMongoRepositories;
 import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @EnableMongoRepositories
 @SpringBootApplication(exclude = {DataSourceAutoConfiguration.class})
 @EnableAsync
+@EnableScheduling
 @SecurityScheme(
         name = "jwtAuth", // Use a suitable name
         type = SecuritySchemeType.HTTP,
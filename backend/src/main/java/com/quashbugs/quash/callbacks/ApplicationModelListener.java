@@ -0,0 +1,39 @@
+package com.quashbugs.quash.callbacks;
+
+import com.quashbugs.quash.model.QuashClientApplication;
+import com.quashbugs.quash.service.AppMetadataCache;
+import com.quashbugs.quash.service.ReportingTokenRegistry;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+@Component
+public class ApplicationModelListener extends AbstractMongoEventListener<QuashClientApplication> {
+
+    private final AppMetadataCache appMetadataCache;
+
+    private final ReportingTokenRegistry reportingTokenRegistry;
+
+    public ApplicationModelListener(AppMetadataCache appMetadataCache, ReportingTokenRegistry reportingTokenRegistry) {
+        this.appMetadataCache = appMetadataCache;
+        this.reportingTokenRegistry = reportingTokenRegistry;
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<QuashClientApplication> event) {
+        appMetadataCache.invalidate(event.getSource().getId());
+        reportingTokenRegistry.applicationSaved(event.getSource());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<QuashClientApplication> event) {
+        Object id = event.getSource().get("_id");
+        if (id != null) {
+            appMetadataCache.invalidate(id.toString());
+            reportingTokenRegistry.applicationDeleted(id.toString());
+        } else {
+            appMetadataCache.invalidateAll();
+        }
+    }
+}
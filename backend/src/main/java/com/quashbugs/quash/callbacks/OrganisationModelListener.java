@@ -1,8 +1,13 @@
 package com.quashbugs.quash.callbacks;
 
 import com.quashbugs.quash.model.Organisation;
+import com.quashbugs.quash.service.AppMetadataCache;
+import com.quashbugs.quash.service.AuthPrincipalCache;
+import com.quashbugs.quash.service.ReportingTokenRegistry;
 import com.quashbugs.quash.service.SequenceGeneratorService;
 import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
 import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
 import org.springframework.stereotype.Component;
 
@@ -11,8 +16,18 @@ public class OrganisationModelListener extends AbstractMongoEventListener<Organi
 
     private final SequenceGeneratorService sequenceGenerator;
 
-    public OrganisationModelListener(SequenceGeneratorService sequenceGenerator) {
+    private final AppMetadataCache appMetadataCache;
+
+    private final AuthPrincipalCache authPrincipalCache;
+
+    private final ReportingTokenRegistry reportingTokenRegistry;
+
+    public OrganisationModelListener(SequenceGeneratorService sequenceGenerator, AppMetadataCache appMetadataCache,
+                                     AuthPrincipalCache authPrincipalCache, ReportingTokenRegistry reportingTokenRegistry) {
         this.sequenceGenerator = sequenceGenerator;
+        this.appMetadataCache = appMetadataCache;
+        this.authPrincipalCache = authPrincipalCache;
+        this.reportingTokenRegistry = reportingTokenRegistry;
     }
 
     @Override
@@ -21,4 +36,24 @@ public class OrganisationModelListener extends AbstractMongoEventListener<Organi
             entity.getSource().setId(sequenceGenerator.generateSequence(Organisation.SEQUENCE_NAME));
         }
     }
+
+    // Cached app metadata holds the organisation of every app, so any change to an organisation
+    // drops all entries.
+    @Override
+    public void onAfterSave(AfterSaveEvent<Organisation> event) {
+        appMetadataCache.invalidateAll();
+        authPrincipalCache.invalidateOrganisation(event.getSource().getId());
+        reportingTokenRegistry.organisationSaved(event.getSource());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<Organisation> event) {
+        appMetadataCache.invalidateAll();
+        if (event.getSource().get("_id") instanceof Number id) {
+            authPrincipalCache.invalidateOrganisation(id.longValue());
+            reportingTokenRegistry.organisationDeleted(id.longValue());
+        } else {
+            authPrincipalCache.invalidateAllOrganisations();
+        }
+    }
 }
@@ -0,0 +1,33 @@
+package com.quashbugs.quash.callbacks;
+
+import com.quashbugs.quash.model.User;
+import com.quashbugs.quash.service.AuthPrincipalCache;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterDeleteEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+@Component
+public class UserModelListener extends AbstractMongoEventListener<User> {
+
+    private final AuthPrincipalCache authPrincipalCache;
+
+    public UserModelListener(AuthPrincipalCache authPrincipalCache) {
+        this.authPrincipalCache = authPrincipalCache;
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        authPrincipalCache.invalidateUser(event.getSource().getId());
+    }
+
+    @Override
+    public void onAfterDelete(AfterDeleteEvent<User> event) {
+        Object id = event.getSource().get("_id");
+        if (id != null) {
+            authPrincipalCache.invalidateUser(id.toString());
+        } else {
+            authPrincipalCache.invalidateAllUsers();
+        }
+    }
+}
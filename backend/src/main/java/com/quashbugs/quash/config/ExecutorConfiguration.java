@@ -0,0 +1,166 @@
+package com.quashbugs.quash.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.task.ThreadPoolTaskExecutorBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class ExecutorConfiguration {
+
+    @Value("${media.upload.pool-size:8}")
+    private int mediaUploadPoolSize;
+
+    @Value("${media.upload.queue-capacity:256}")
+    private int mediaUploadQueueCapacity;
+
+    @Value("${storage.signed-url.pool-size:4}")
+    private int signedUrlPoolSize;
+
+    @Value("${storage.signed-url.queue-capacity:512}")
+    private int signedUrlQueueCapacity;
+
+    @Value("${gif.decode.pool-size:4}")
+    private int gifDecodePoolSize;
+
+    @Value("${gif.decode.queue-capacity:64}")
+    private int gifDecodeQueueCapacity;
+
+    @Value("${media.thumbnail.pool-size:2}")
+    private int thumbnailPoolSize;
+
+    @Value("${media.thumbnail.queue-capacity:256}")
+    private int thumbnailQueueCapacity;
+
+    @Value("${gif.jobs.memory-budget-mb:0}")
+    private long gifJobsMemoryBudgetMb;
+
+    @Value("${gif.jobs.memory-per-job-mb:96}")
+    private long gifJobMemoryMb;
+
+    @Value("${gif.jobs.max-workers:4}")
+    private int gifJobsMaxWorkers;
+
+    @Value("${report.ingest.workers:2}")
+    private int ingestWorkers;
+
+    /**
+     * Declaring any executor bean switches off Spring Boot's auto-configured one, so it is
+     * re-declared here to keep {@code @Async} methods on the default application executor.
+     */
+    @Bean(name = {"applicationTaskExecutor", "taskExecutor"})
+    public ThreadPoolTaskExecutor applicationTaskExecutor(ThreadPoolTaskExecutorBuilder builder) {
+        return builder.build();
+    }
+
+    /**
+     * Executor used to fan out media uploads of a single report. When the queue is full the
+     * calling request thread performs the upload itself, which throttles new submissions.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor mediaUploadExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = newBoundedExecutor("media-upload-", mediaUploadPoolSize, mediaUploadQueueCapacity);
+        registerGauges(meterRegistry, executor, "media.upload");
+        return executor;
+    }
+
+    /**
+     * Executor used to sign media URLs in batches, kept separate from the common pool so a large
+     * report page cannot starve other asynchronous work.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor signedUrlExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = newBoundedExecutor("signed-url-", signedUrlPoolSize, signedUrlQueueCapacity);
+        registerGauges(meterRegistry, executor, "signed.url");
+        return executor;
+    }
+
+    /**
+     * Executor that reads and decodes GIF source frames ahead of the encoder. Each GIF keeps only
+     * a few frames in flight, so the queue stays short even with several GIFs being encoded.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor gifDecodeExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = newBoundedExecutor("gif-decode-", gifDecodePoolSize, gifDecodeQueueCapacity);
+        registerGauges(meterRegistry, executor, "gif.decode");
+        return executor;
+    }
+
+    /**
+     * Executor that generates media thumbnails in the background. Thumbnails are optional, so
+     * when the queue is full new ones are dropped instead of slowing down the uploading request.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor thumbnailExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = newBoundedExecutor("thumbnail-", thumbnailPoolSize, thumbnailQueueCapacity,
+                new ThreadPoolExecutor.DiscardPolicy());
+        registerGauges(meterRegistry, executor, "media.thumbnail");
+        return executor;
+    }
+
+    /**
+     * Workers that run queued GIF jobs. The pool is sized so that all workers together stay
+     * within the memory budget, which defaults to a quarter of the maximum heap. It has no queue:
+     * jobs wait in Mongo until a worker is free.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor gifJobExecutor(MeterRegistry meterRegistry) {
+        long budgetMb = gifJobsMemoryBudgetMb > 0 ? gifJobsMemoryBudgetMb : Runtime.getRuntime().maxMemory() / (4 * 1024 * 1024);
+        int workers = (int) Math.max(1, Math.min(gifJobsMaxWorkers, budgetMb / Math.max(1, gifJobMemoryMb)));
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("gif-job-");
+        executor.setCorePoolSize(workers);
+        executor.setMaxPoolSize(workers);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+        registerGauges(meterRegistry, executor, "gif.jobs");
+        return executor;
+    }
+
+    /**
+     * Workers that run queued report ingest jobs. Like the GIF workers it has no queue: waiting
+     * jobs stay in Mongo until a worker is free.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor ingestJobExecutor(MeterRegistry meterRegistry) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("ingest-job-");
+        executor.setCorePoolSize(ingestWorkers);
+        executor.setMaxPoolSize(ingestWorkers);
+        executor.setQueueCapacity(0);
+        executor.initialize();
+        registerGauges(meterRegistry, executor, "report.ingest");
+        return executor;
+    }
+
+    private static ThreadPoolTaskExecutor newBoundedExecutor(String threadNamePrefix, int poolSize, int queueCapacity) {
+        return newBoundedExecutor(threadNamePrefix, poolSize, queueCapacity, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    private static ThreadPoolTaskExecutor newBoundedExecutor(String threadNamePrefix, int poolSize, int queueCapacity,
+                                                             RejectedExecutionHandler rejectedExecutionHandler) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(threadNamePrefix);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(rejectedExecutionHandler);
+        executor.initialize();
+        return executor;
+    }
+
+    private static void registerGauges(MeterRegistry meterRegistry, ThreadPoolTaskExecutor executor, String prefix) {
+        Gauge.builder(prefix + ".queue.depth", executor, ThreadPoolTaskExecutor::getQueueSize)
+                .description("Tasks waiting for a free worker")
+                .register(meterRegistry);
+        Gauge.builder(prefix + ".in.flight", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .description("Tasks currently being executed")
+                .register(meterRegistry);
+    }
+}
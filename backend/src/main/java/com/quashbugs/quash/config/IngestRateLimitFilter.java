@@ -0,0 +1,137 @@
+package com.quashbugs.quash.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quashbugs.quash.dto.response.ResponseDTO;
+import com.quashbugs.quash.model.Organisation;
+import com.quashbugs.quash.model.User;
+import com.quashbugs.quash.service.IngestRateLimiter;
+import com.quashbugs.quash.service.IngestRateLimiter.EndpointClass;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.UriComponentsBuilder;
+import org.springframework.web.util.UriUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limits the SDK ingest endpoints with {@link IngestRateLimiter}, answering throttled
+ * requests with 429 and a Retry-After header. Runs after {@link JwtAuthenticationFilter}, so
+ * requests are keyed by the authenticated organisation or user and only fall back to the client
+ * address when unauthenticated. The app of a new report, sent synchronously or not, is taken
+ * from the {@code X-App-Id} header or the {@code appId} query parameter. The request body is
+ * never read here, so a throttled upload is rejected before it is received. Reports that name
+ * their app only in the body, as well as bitmaps and network logs, are limited per organisation.
+ * <p>
+ * Not a bean on purpose: Spring Boot would register it with the servlet container as well, where
+ * it would run before authentication.
+ */
+public class IngestRateLimitFilter extends OncePerRequestFilter {
+
+    private static final String REPORT_PATH = "/api/report";
+
+    private static final String ASYNC_REPORT_PATH = "/api/report/async";
+
+    private static final String BITMAPS_PATH = "/api/report/*/bitmaps";
+
+    private static final String NETWORK_LOGS_PATH = "/api/report/*/network-logs/**";
+
+    private static final String APP_ID_HEADER = "X-App-Id";
+
+    private static final String APP_ID_PARAMETER = "appId";
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
+    private final IngestRateLimiter ingestRateLimiter;
+
+    private final ObjectMapper objectMapper;
+
+    public IngestRateLimitFilter(IngestRateLimiter ingestRateLimiter, ObjectMapper objectMapper) {
+        this.ingestRateLimiter = ingestRateLimiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected void doFilterInternal(@NonNull HttpServletRequest request,
+                                    @NonNull HttpServletResponse response, @NonNull FilterChain filterChain)
+            throws ServletException, IOException {
+        EndpointClass endpointClass = endpointClass(request);
+        if (endpointClass == null) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        String appId = endpointClass == EndpointClass.REPORT ? appId(request) : null;
+        long waitNanos = ingestRateLimiter.tryAcquire(endpointClass, clientKey(request), appId);
+        if (waitNanos > 0) {
+            long retryAfterSeconds = Math.max(1, (waitNanos + TimeUnit.SECONDS.toNanos(1) - 1) / TimeUnit.SECONDS.toNanos(1));
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(),
+                    new ResponseDTO(false, "Too many requests, retry after " + retryAfterSeconds + " seconds", null));
+            return;
+        }
+        filterChain.doFilter(request, response);
+    }
+
+    private EndpointClass endpointClass(HttpServletRequest request) {
+        if (!HttpMethod.POST.matches(request.getMethod())) {
+            return null;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        if (REPORT_PATH.equals(path) || (REPORT_PATH + "/").equals(path) || ASYNC_REPORT_PATH.equals(path)) {
+            return EndpointClass.REPORT;
+        } else if (pathMatcher.match(BITMAPS_PATH, path)) {
+            return EndpointClass.BITMAPS;
+        } else if (pathMatcher.match(NETWORK_LOGS_PATH, path)) {
+            return EndpointClass.NETWORK_LOGS;
+        }
+        return null;
+    }
+
+    /**
+     * Reads the app ID without {@link HttpServletRequest#getParameter}, which would make the
+     * container read the whole multipart body.
+     */
+    private static String appId(HttpServletRequest request) {
+        String appId = request.getHeader(APP_ID_HEADER);
+        if (appId != null && !appId.isBlank()) {
+            return appId;
+        }
+        String queryString = request.getQueryString();
+        if (queryString == null) {
+            return null;
+        }
+        String value = UriComponentsBuilder.newInstance().query(queryString).build()
+                .getQueryParams().getFirst(APP_ID_PARAMETER);
+        return value != null ? UriUtils.decode(value, StandardCharsets.UTF_8) : null;
+    }
+
+    private static String clientKey(HttpServletRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        Object principal = authentication != null ? authentication.getPrincipal() : null;
+        if (principal instanceof Optional<?> optional) {
+            principal = optional.orElse(null);
+        }
+        if (principal instanceof Organisation organisation) {
+            return "org-" + organisation.getId();
+        } else if (principal instanceof User user) {
+            return "user-" + user.getId();
+        }
+        return "ip-" + request.getRemoteAddr();
+    }
+}
@@ -3,9 +3,10 @@ package com.quashbugs.quash.config;
 import com.quashbugs.quash.exceptions.TokenExpiredAuthenticationException;
 import com.quashbugs.quash.model.Organisation;
 import com.quashbugs.quash.model.User;
-import com.quashbugs.quash.repo.OrganisationRepository;
+import com.quashbugs.quash.service.AuthPrincipalCache;
 import com.quashbugs.quash.service.JwtService;
-import com.quashbugs.quash.service.UserService;
+import com.quashbugs.quash.service.ReportingTokenRegistry;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
@@ -29,11 +30,11 @@ import java.util.Optional;
 @RequiredArgsConstructor
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private final JwtService jwtService;
-    @Autowired
-    private final UserService userService;
 
     @Autowired
-    private final OrganisationRepository organisationRepository;
+    private final AuthPrincipalCache authPrincipalCache;
+
+    private final ReportingTokenRegistry reportingTokenRegistry;
 
     @Override
     protected void doFilterInternal(@NonNull HttpServletRequest request,
@@ -50,15 +51,17 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
         }
 
         jwt = authHeader.substring(7);
-        if (jwtService.isTokenExpired(jwt)) {
+        // Parse and verify the token once and read every claim from the result.
+        final Claims claims = jwtService.extractAllClaims(jwt);
+        if (jwtService.isTokenExpired(claims)) {
             throw new TokenExpiredAuthenticationException("Token has expired");
         }
-        workEmail = jwtService.extractWorkEmail(jwt);
-        orgId = jwtService.extractOrgIdFromToken(jwt);
+        workEmail = claims.getSubject();
+        orgId = jwtService.extractOrgId(claims);
 
         if (StringUtils.hasText(workEmail) && SecurityContextHolder.getContext().getAuthentication() == null) {
-            User user = userService.getUserByWorkEmail(workEmail);
-            if (user!=null && jwtService.isTokenValid(jwt, user)) {
+            User user = authPrincipalCache.getUser(workEmail).orElse(null);
+            if (user!=null && jwtService.isTokenValid(claims, user)) {
                 SecurityContext context = SecurityContextHolder.createEmptyContext();
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         user, null, user.getAuthorities());
@@ -66,9 +69,15 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
                 context.setAuthentication(authToken);
                 SecurityContextHolder.setContext(context);
             }
-        } else if (StringUtils.hasText(orgId) && SecurityContextHolder.getContext().getAuthentication() == null) {
-            Optional<Organisation> organisation= organisationRepository.findOptionalById(Long.parseLong(orgId));
-            if(organisation.isPresent() && jwtService.isTokenValid(jwt, organisation.get())){
+        } else if (StringUtils.hasText(orgId) && !reportingTokenRegistry.isRevoked(claims.getId())
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // SDK reporting tokens are resolved from memory; tokens the registry does not know
+            // yet fall back to the organisation cache, where only the current key is accepted.
+            long orgIdValue = Long.parseLong(orgId);
+            Optional<Organisation> organisation = reportingTokenRegistry.findOrganisation(claims.getId(), orgIdValue)
+                    .or(() -> authPrincipalCache.getOrganisation(orgIdValue)
+                            .filter(org -> claims.getId() != null && claims.getId().equals(org.getOrgUniqueKey())));
+            if(organisation.isPresent() && jwtService.isTokenValid(claims, organisation.get())){
                 SecurityContext context = SecurityContextHolder.createEmptyContext();
                 UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                         organisation, null, null);
@@ -0,0 +1,148 @@
+package com.quashbugs.quash.config;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.index.MongoPersistentEntityIndexResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.StringJoiner;
+
+/**
+ * Compares the indexes declared on the model classes with the ones present in the database
+ * once the application is ready. Missing indexes are logged and, unless disabled, created;
+ * indexes that have not served a single operation since the server started are reported so
+ * they can be reviewed.
+ */
+@Component
+public class MongoIndexVerifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MongoIndexVerifier.class);
+
+    private static final String ID_INDEX_NAME = "_id_";
+
+    private final MongoOperations mongoOperations;
+
+    private final MongoMappingContext mappingContext;
+
+    @Value("${mongo.indexes.verify-on-startup:true}")
+    private boolean verifyOnStartup;
+
+    @Value("${mongo.indexes.create-missing:true}")
+    private boolean createMissing;
+
+    @Autowired
+    public MongoIndexVerifier(MongoOperations mongoOperations, MongoMappingContext mappingContext) {
+        this.mongoOperations = mongoOperations;
+        this.mappingContext = mappingContext;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void verifyIndexes() {
+        if (!verifyOnStartup) {
+            return;
+        }
+        MongoPersistentEntityIndexResolver resolver = new MongoPersistentEntityIndexResolver(mappingContext);
+        for (MongoPersistentEntity<?> entity : mappingContext.getPersistentEntities()) {
+            if (!entity.isAnnotationPresent(org.springframework.data.mongodb.core.mapping.Document.class)) {
+                continue;
+            }
+            try {
+                verifyCollection(entity, resolver);
+            } catch (Exception e) {
+                LOGGER.warn("Could not verify indexes of collection {}: {}", entity.getCollection(), e.getMessage());
+            }
+        }
+    }
+
+    private void verifyCollection(MongoPersistentEntity<?> entity, MongoPersistentEntityIndexResolver resolver) {
+        String collection = entity.getCollection();
+        IndexOperations indexOperations = mongoOperations.indexOps(entity.getType());
+        Set<String> existingKeys = new HashSet<>();
+        for (IndexInfo indexInfo : indexOperations.getIndexInfo()) {
+            existingKeys.add(keyOf(indexInfo));
+        }
+
+        for (IndexDefinition definition : resolver.resolveIndexFor(entity.getTypeInformation())) {
+            String key = keyOf(definition.getIndexKeys());
+            if (existingKeys.contains(key)) {
+                continue;
+            }
+            if (createMissing) {
+                LOGGER.info("Creating missing index {} on collection {}", key, collection);
+                indexOperations.ensureIndex(definition);
+                existingKeys.add(key);
+            } else {
+                LOGGER.warn("Missing index {} on collection {}", key, collection);
+            }
+        }
+
+        if (mongoOperations.collectionExists(collection)) {
+            reportUnusedIndexes(collection);
+        }
+    }
+
+    /**
+     * $indexStats counters are reset when the server restarts, so an index listed here has only
+     * been unused since then.
+     */
+    private void reportUnusedIndexes(String collection) {
+        List<Document> stats = mongoOperations.getCollection(collection)
+                .aggregate(List.of(new Document("$indexStats", new Document())))
+                .into(new ArrayList<>());
+        for (Document stat : stats) {
+            String name = stat.getString("name");
+            Document accesses = stat.get("accesses", Document.class);
+            if (ID_INDEX_NAME.equals(name) || accesses == null) {
+                continue;
+            }
+            Number ops = accesses.get("ops", Number.class);
+            if (ops != null && ops.longValue() == 0) {
+                LOGGER.info("Index {} on collection {} has not been used since {}", name, collection, accesses.get("since"));
+            }
+        }
+    }
+
+    private static String keyOf(IndexInfo indexInfo) {
+        StringJoiner key = new StringJoiner(", ", "{", "}");
+        for (IndexField field : indexInfo.getIndexFields()) {
+            Sort.Direction direction = field.getDirection();
+            if (direction == null) {
+                key.add(field.getKey() + ": " + (field.isText() ? "text" : "other"));
+            } else {
+                key.add(field.getKey() + ": " + (direction == Sort.Direction.ASC ? 1 : -1));
+            }
+        }
+        return key.toString();
+    }
+
+    private static String keyOf(Document indexKeys) {
+        StringJoiner key = new StringJoiner(", ", "{", "}");
+        for (Map.Entry<String, Object> entry : indexKeys.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Number number) {
+                key.add(entry.getKey() + ": " + (number.intValue() < 0 ? -1 : 1));
+            } else {
+                key.add(entry.getKey() + ": " + ("text".equals(value) ? "text" : "other"));
+            }
+        }
+        return key.toString();
+    }
+}
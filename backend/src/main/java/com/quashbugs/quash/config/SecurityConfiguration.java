@@ -1,5 +1,7 @@
 package com.quashbugs.quash.config;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quashbugs.quash.service.IngestRateLimiter;
 import com.quashbugs.quash.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
@@ -35,6 +37,12 @@ public class SecurityConfiguration {
     @Autowired
     private JwtAuthenticationEntryPoint jwtAuthenticationEntryPoint;
 
+    @Autowired
+    private IngestRateLimiter ingestRateLimiter;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     @Value("${spring.frontend.url}")
     private String frontendUrl;
 
@@ -67,7 +75,8 @@ public class SecurityConfiguration {
 
                 .sessionManagement(manager -> manager.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authenticationProvider(authenticationProvider())
-                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
+                .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class)
+                .addFilterAfter(new IngestRateLimitFilter(ingestRateLimiter, objectMapper), JwtAuthenticationFilter.class);
         return http.build();
     }
 
@@ -1,9 +1,12 @@
 package com.quashbugs.quash.config;
 
 import com.quashbugs.quash.repo.*;
+import com.quashbugs.quash.service.AppMetadataCache;
 import com.quashbugs.quash.service.AwsStorageService;
 import com.quashbugs.quash.service.AzureStorageService;
 import com.quashbugs.quash.service.GcpStorageService;
+import com.quashbugs.quash.service.MediaBlobRegistry;
+import com.quashbugs.quash.service.SignedUrlCache;
 import com.quashbugs.quash.service.StorageService;
 import com.quashbugs.quash.util.StorageProperties;
 import org.springframework.beans.factory.annotation.Value;
@@ -20,16 +23,18 @@ public class StorageConfiguration {
     public StorageService storageService(BugMediaRepository bugMediaRepository,
                                          GifMediaRepository gifMediaRepository,
                                          CrashLogRepository crashLogRepository,
-                                         ApplicationRepository applicationRepository,
+                                         AppMetadataCache appMetadataCache,
                                          ChatUploadRepository chatUploadRepository,
-                                         StorageProperties storageProperties) {
+                                         StorageProperties storageProperties,
+                                         SignedUrlCache signedUrlCache,
+                                         MediaBlobRegistry mediaBlobRegistry) {
         switch (cloudProvider.toLowerCase()) {
             case "gcp":
-                return new GcpStorageService(bugMediaRepository, gifMediaRepository, crashLogRepository, applicationRepository, chatUploadRepository, storageProperties);
+                return new GcpStorageService(bugMediaRepository, gifMediaRepository, crashLogRepository, appMetadataCache, chatUploadRepository, storageProperties, signedUrlCache, mediaBlobRegistry);
             case "aws":
-                return new AwsStorageService(bugMediaRepository, gifMediaRepository, crashLogRepository, applicationRepository, chatUploadRepository, storageProperties);
+                return new AwsStorageService(bugMediaRepository, gifMediaRepository, crashLogRepository, appMetadataCache, chatUploadRepository, storageProperties, signedUrlCache, mediaBlobRegistry);
             case "azure":
-                return new AzureStorageService(bugMediaRepository, gifMediaRepository, crashLogRepository, applicationRepository, chatUploadRepository, storageProperties);
+                return new AzureStorageService(bugMediaRepository, gifMediaRepository, crashLogRepository, appMetadataCache, chatUploadRepository, storageProperties, signedUrlCache, mediaBlobRegistry);
             default:
                 throw new IllegalArgumentException("Invalid cloud provider: " + cloudProvider);
         }
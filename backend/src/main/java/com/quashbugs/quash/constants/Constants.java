@@ -150,4 +150,8 @@ public class Constants {
     public static final String SECRET_KEY = "YOUR_GENERATED_SECRET";
 
     public static final long FIFTEEN_MB = 15 * 1024 * 1024; // 15 MB in bytes
+
+    public static final int SIGNED_URL_EXPIRY_DAYS = 7;
+
+    public static final int SIGNED_URL_CACHE_EXPIRY_MARGIN_HOURS = 24;
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import com.quashbugs.quash.dto.response.MemberResponseDTO;
 import com.quashbugs.quash.dto.response.ResponseDTO;
 import com.quashbugs.quash.model.Organisation;
 import com.quashbugs.quash.model.QuashClientApplication;
+import com.quashbugs.quash.model.SessionRenderer;
 import com.quashbugs.quash.model.User;
 import com.quashbugs.quash.repo.ApplicationRepository;
 import com.quashbugs.quash.repo.OrganisationRepository;
@@ -70,6 +71,30 @@ public class ApplicationController {
         }
     }
 
+    /**
+     * Selects how session recordings of an application's reports are rendered.
+     *
+     * @param appId          The ID of the application.
+     * @param renderer       GIF (the default) or MP4.
+     * @param authentication The user's authentication object.
+     * @return The response entity containing the selected renderer.
+     */
+    @PutMapping("/{appId}/session-renderer")
+    public ResponseEntity<ResponseDTO> setSessionRenderer(@PathVariable String appId,
+                                                          @RequestParam SessionRenderer renderer,
+                                                          Authentication authentication) {
+        try {
+            User user = (User) authentication.getPrincipal();
+            QuashClientApplication app = applicationService.setSessionRenderer(appId, renderer, user);
+            return ResponseEntity.ok(new ResponseDTO(true, "Session renderer updated successfully", app.getSessionRenderer()));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ResponseDTO(false, e.getMessage(), null));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(new ResponseDTO(false, "Error while updating session renderer: " + e.getMessage(), null));
+        }
+    }
+
     /**
      * Registers a new application.
      *
@@ -1,19 +1,27 @@
 package com.quashbugs.quash.controller;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.quashbugs.quash.dto.miscellaneous.ThreadUploadsMediaDTO;
+import com.quashbugs.quash.dto.request.NetworkLogFilterDTO;
 import com.quashbugs.quash.dto.request.NetworkLogRequestBodyDTO;
 import com.quashbugs.quash.dto.request.PostThreadRequestBodyDTO;
 import com.quashbugs.quash.dto.request.ReportRequestDTO;
 import com.quashbugs.quash.dto.request.UpdateReportRequestDTO;
 import com.quashbugs.quash.dto.response.ChatThreadResponseDTO;
+import com.quashbugs.quash.dto.response.GifJobResponseDTO;
+import com.quashbugs.quash.dto.response.IngestJobResponseDTO;
 import com.quashbugs.quash.dto.response.ResponseDTO;
+import com.quashbugs.quash.exceptions.GifQueueFullException;
+import com.quashbugs.quash.exceptions.IngestQueueFullException;
 import com.quashbugs.quash.exceptions.ReportNotFoundException;
 import com.quashbugs.quash.model.*;
 import com.quashbugs.quash.service.*;
 import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import jakarta.servlet.http.HttpServletRequest;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -27,10 +35,6 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
 
 @RestController
 @RequestMapping("/api/report")
@@ -47,6 +51,16 @@ public class ReportsController {
 
     private final ApplicationService applicationService;
 
+    private final GifJobService gifJobService;
+
+    private final IngestJobService ingestJobService;
+
+    private static final long GIF_QUEUE_RETRY_AFTER_SECONDS = 30;
+
+    private static final long INGEST_QUEUE_RETRY_AFTER_SECONDS = 30;
+
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
     private static final Logger logger = LoggerFactory.getLogger(ReportsController.class);
 
     @Autowired
@@ -54,12 +68,16 @@ public class ReportsController {
                              ReportsService reportService,
                              UtilsService utilsService,
                              EmailService emailService,
-                             ApplicationService applicationService) {
+                             ApplicationService applicationService,
+                             GifJobService gifJobService,
+                             IngestJobService ingestJobService) {
         this.storageService = storageService;
         this.reportService = reportService;
         this.utilsService = utilsService;
         this.emailService = emailService;
         this.applicationService = applicationService;
+        this.gifJobService = gifJobService;
+        this.ingestJobService = ingestJobService;
     }
 
     /**
@@ -137,49 +155,105 @@ public class ReportsController {
     }
 
     /**
-     * Receives a list of bitmap files and creates a GIF from them.
+     * Creates a new bug report asynchronously. The report ID is allocated and returned right away,
+     * while its media, crash log and device metadata are attached in the background. Retries of
+     * the same request should carry the same {@code Idempotency-Key} header, so they return the
+     * report created by the first attempt.
+     *
+     * @param bugReportRequestDTO The request containing details for creating the bug report.
+     * @param idempotencyKey      An optional key identifying the request across retries.
+     * @return 202 with the queued ingest job, or 429 when the ingest queue is full.
+     */
+    @PostMapping(value = "/async", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ResponseDTO> createBugReportAsync(@ModelAttribute ReportRequestDTO bugReportRequestDTO,
+                                                            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey,
+                                                            Authentication authentication) {
+        try {
+            Organisation organisation = applicationService.getOrganisationFromObject(authentication.getPrincipal());
+            if (organisation == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(false, "Organisation not found", null));
+            }
+            reportService.validateRequest(bugReportRequestDTO);
+            IngestJob job = ingestJobService.enqueue(bugReportRequestDTO, organisation, idempotencyKey);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(new ResponseDTO(true, "Bug report accepted", toIngestJobResponse(job)));
+        } catch (IngestQueueFullException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(INGEST_QUEUE_RETRY_AFTER_SECONDS))
+                    .body(new ResponseDTO(false, e.getMessage(), null));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ResponseDTO(false, e.getMessage(), null));
+        } catch (Exception e) {
+            logger.error("Error while accepting bug report: ", e);
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseDTO(false, "Couldn't save bug", e.getMessage()));
+        }
+    }
+
+    /**
+     * Retrieves the status of the latest ingest job of an asynchronously created report.
+     *
+     * @param reportId The ID of the report.
+     * @return The ingest job status.
+     */
+    @GetMapping("/{reportId}/ingest-status")
+    public ResponseEntity<ResponseDTO> getIngestStatus(@PathVariable String reportId) {
+        try {
+            return ingestJobService.findLatestJob(reportId)
+                    .map(job -> ResponseEntity.ok(new ResponseDTO(true, "Ingest status fetched successfully", toIngestJobResponse(job))))
+                    .orElseGet(() -> ResponseEntity.notFound().build());
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(new ResponseDTO(false, "An error occurred while fetching the ingest status: " + e.getMessage(), null));
+        }
+    }
+
+    private IngestJobResponseDTO toIngestJobResponse(IngestJob job) {
+        return IngestJobResponseDTO.builder()
+                .jobId(job.getId())
+                .reportId(job.getReportId())
+                .status(job.getStatus())
+                .attempts(job.getAttempts())
+                .errorMessage(job.getErrorMessage())
+                .build();
+    }
+
+    /**
+     * Receives a list of bitmap files and queues the creation of a GIF from them.
      *
      * @param reportId The ID of the report.
      * @param files    The list of bitmap files.
-     * @return A CompletableFuture that represents the asynchronous result of creating the GIF from the bitmaps.
+     * @return 202 with the queued GIF job, or 429 when the GIF queue is full.
      */
     @PostMapping("/{reportId}/bitmaps")
-    public CompletableFuture<ResponseEntity<ResponseDTO>> receiveBitmapsAndCreateGif(
+    public ResponseEntity<ResponseDTO> receiveBitmapsAndCreateGif(
             @PathVariable String reportId,
             @RequestParam("bitmaps") List<MultipartFile> files) {
         logger.info("Processing bitmaps for report ID: {}", reportId);
         if (reportId == null || reportId.isEmpty()) {
-            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST)
-                    .body(new ResponseDTO(false, "Invalid Report ID", null)));
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                    .body(new ResponseDTO(false, "Invalid Report ID", null));
         }
-        CompletableFuture<Report> reportFuture = reportService.findReportById(reportId)
-                .map(CompletableFuture::completedFuture)
-                .orElseGet(() -> CompletableFuture.failedFuture(new ReportNotFoundException("Report not found with ID: " + reportId)));
-
-        return reportFuture.thenCompose(report -> {
-            logger.info("Processing bitmaps for report ID: {}", reportId);
-            return reportService.processBitmapsAndCreateGif(report, files);
-        }).exceptionally(this::handleExceptions);
-    }
-
-    private ResponseEntity<ResponseDTO> handleExceptions(Throwable e) {
-        if (e instanceof ReportNotFoundException) {
+        try {
+            Report report = reportService.findReportById(reportId).orElseThrow(() ->
+                    new ReportNotFoundException("Report not found with ID: " + reportId));
+            gifJobService.ensureCapacity();
+            GifJob job = gifJobService.enqueue(report, files);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(new ResponseDTO(true, "GIF generation queued.", toGifJobResponse(job)));
+        } catch (ReportNotFoundException e) {
             return ResponseEntity.notFound().build();
-        } else if (e instanceof RuntimeException && e.getCause() != null) {
-            return ResponseEntity.internalServerError().body(new ResponseDTO(false, e.getCause().getMessage(), null));
-        } else {
-            return ResponseEntity.internalServerError().body(new ResponseDTO(false, "An unexpected error occurred.", null));
+        } catch (GifQueueFullException e) {
+            return gifQueueFull(e);
+        } catch (Exception e) {
+            logger.error("An error occurred while processing bitmaps for report ID: {}", reportId, e);
+            return ResponseEntity.internalServerError().body(new ResponseDTO(false, e.getMessage(), null));
         }
     }
 
     /**
-     * Generates a GIF from a report.
+     * Queues the generation of a GIF from the bitmaps already stored for a report.
      *
      * @param reportId The ID of the report for which the GIF needs to be generated.
-     * @return A response entity containing the status and message indicating the result of the GIF generation process.
+     * @return 202 with the queued GIF job, 200 if the GIF already exists, or 429 when the GIF queue is full.
      */
     @GetMapping("/{reportId}/generate-gif")
-    @Transactional
     public ResponseEntity<ResponseDTO> generateGif(@PathVariable String reportId) {
         if (reportId == null || reportId.trim().isEmpty()) {
             return ResponseEntity.badRequest().body(new ResponseDTO(false, "The provided report ID is invalid or missing.", null));
@@ -194,25 +268,58 @@ public class ReportsController {
         if (report.getGifStatus() == GifStatus.COMPLETED) {
             return ResponseEntity.ok(new ResponseDTO(true, "Media has already been processed for this report.", null));
         }
-        logger.info("Starting GIF processing for report ID: {}", reportId);
-        CompletableFuture<ResponseEntity<ResponseDTO>> futureResponse = reportService.startGifProcessing(report);
+        logger.info("Queueing GIF processing for report ID: {}", reportId);
         try {
-            return futureResponse.get(120, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            logger.error("The request was interrupted for report ID: {}", reportId, e);
-            Thread.currentThread().interrupt();
-            return ResponseEntity.internalServerError().body(new ResponseDTO(false, "The request was interrupted.", null));
-        } catch (ExecutionException e) {
-            logger.error("An error occurred while processing the GIF generation request for report ID: {}", reportId, e);
-            Throwable cause = e.getCause();
+            GifJob job = gifJobService.enqueue(report);
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(new ResponseDTO(true, "GIF generation queued.", toGifJobResponse(job)));
+        } catch (GifQueueFullException e) {
+            return gifQueueFull(e);
+        } catch (Exception e) {
+            logger.error("An error occurred while queueing the GIF generation request for report ID: {}", reportId, e);
             return ResponseEntity.internalServerError().body(new ResponseDTO(false,
-                    "An error occurred while processing the GIF generation request: " + cause.getMessage(), null));
-        } catch (TimeoutException e) {
-            logger.error("Processing timeout exceeded for report ID: {}", reportId, e);
-            return ResponseEntity.internalServerError().body(new ResponseDTO(false, "Processing timeout exceeded.", null));
+                    "An error occurred while processing the GIF generation request: " + e.getMessage(), null));
         }
     }
 
+    /**
+     * Retrieves the status of the latest GIF job of a report.
+     *
+     * @param reportId The ID of the report.
+     * @return The GIF job status, including a signed URL of the GIF once it is completed.
+     */
+    @GetMapping("/{reportId}/gif-status")
+    public ResponseEntity<ResponseDTO> getGifStatus(@PathVariable String reportId) {
+        try {
+            Report report = reportService.findReportById(reportId).orElseThrow(() ->
+                    new ReportNotFoundException("No report found with the specified ID: " + reportId));
+            GifJobResponseDTO status = gifJobService.findLatestJob(reportId)
+                    .map(this::toGifJobResponse)
+                    .orElseGet(() -> GifJobResponseDTO.builder().reportId(reportId).status(report.getGifStatus()).build());
+            return ResponseEntity.ok(new ResponseDTO(true, "GIF status fetched successfully", status));
+        } catch (ReportNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().body(new ResponseDTO(false, "An error occurred while fetching the GIF status: " + e.getMessage(), null));
+        }
+    }
+
+    private GifJobResponseDTO toGifJobResponse(GifJob job) {
+        return GifJobResponseDTO.builder()
+                .jobId(job.getId())
+                .reportId(job.getReportId())
+                .status(job.getStatus())
+                .attempts(job.getAttempts())
+                .errorMessage(job.getErrorMessage())
+                .mediaUrl(job.getMediaRef() != null ? storageService.generateSignedUrl(job.getMediaRef()) : null)
+                .build();
+    }
+
+    private ResponseEntity<ResponseDTO> gifQueueFull(GifQueueFullException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(GIF_QUEUE_RETRY_AFTER_SECONDS))
+                .body(new ResponseDTO(false, e.getMessage(), null));
+    }
+
     /**
      * Saves network logs associated with a specific bug report.
      *
@@ -235,6 +342,96 @@ public class ReportsController {
         }
     }
 
+    /**
+     * Retrieves one page of network log summaries for a report, optionally filtered. Headers and
+     * bodies are left out; use the body endpoint to fetch them.
+     *
+     * @param reportId      The ID of the report for which to retrieve network logs.
+     * @param page          The page number for paginated results.
+     * @param size          The number of network logs to retrieve per page.
+     * @param minStatus     Lowest response code to include.
+     * @param maxStatus     Highest response code to include.
+     * @param method        HTTP method to match.
+     * @param urlPrefix     Prefix the request URL must start with.
+     * @param minDurationMs Shortest call duration to include, in milliseconds.
+     * @return The response containing the page of network logs or an error message.
+     */
+    @GetMapping("/{reportId}/network-logs")
+    public ResponseEntity<ResponseDTO> getNetworkLogSummaries(@PathVariable String reportId,
+                                                              @RequestParam(defaultValue = "0") int page,
+                                                              @RequestParam(defaultValue = "50") int size,
+                                                              @RequestParam(required = false) Integer minStatus,
+                                                              @RequestParam(required = false) Integer maxStatus,
+                                                              @RequestParam(required = false) String method,
+                                                              @RequestParam(required = false) String urlPrefix,
+                                                              @RequestParam(required = false) Long minDurationMs) {
+        try {
+            NetworkLogFilterDTO filter = NetworkLogFilterDTO.builder()
+                    .minStatus(minStatus)
+                    .maxStatus(maxStatus)
+                    .method(method)
+                    .urlPrefix(urlPrefix)
+                    .minDurationMs(minDurationMs)
+                    .build();
+            var response = reportService.getNetworkLogSummaries(reportId, filter, page, size);
+            return ResponseEntity.ok(new ResponseDTO(true, "Network logs fetched successfully", response));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseDTO(false, e.getMessage(), null));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseDTO(false, "An error occurred while fetching network logs", e.getMessage()));
+        }
+    }
+
+    /**
+     * Retrieves the full request or response body of a network log. Bodies above the offload
+     * threshold are only returned as a preview by the network log listing.
+     *
+     * @param reportId     The ID of the report the network log belongs to.
+     * @param networkLogId The ID of the network log.
+     * @param part         Either {@code request} or {@code response}.
+     * @return The response containing the body or an error message.
+     */
+    @GetMapping("/network-logs/{reportId}/{networkLogId}/body")
+    public ResponseEntity<ResponseDTO> getNetworkLogBody(@PathVariable String reportId,
+                                                         @PathVariable String networkLogId,
+                                                         @RequestParam(defaultValue = "response") String part) {
+        try {
+            String body = reportService.getNetworkLogBody(reportId, networkLogId, part);
+            if (body == null) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(false, "Network log body not found", null));
+            }
+            return ResponseEntity.ok(new ResponseDTO(true, "Network log body fetched successfully", body));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseDTO(false, e.getMessage(), null));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseDTO(false, "An error occurred while fetching the network log body", e.getMessage()));
+        }
+    }
+
+    /**
+     * Saves network logs for a bug report, reading them from the request body one entry at a
+     * time. Accepts the same body as {@link #saveNetworkLogs} or a bare JSON array, and responds
+     * with the number of saved entries instead of echoing them back. Nothing is saved if any entry
+     * is invalid, so the whole payload can be resent.
+     *
+     * @param reportId The ID of the bug report for which the network logs are being saved.
+     * @param request  The request whose body contains the network logs.
+     * @return A response entity containing the number of saved network logs or an error message.
+     */
+    @PostMapping(value = "/{reportId}/network-logs/stream", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ResponseDTO> streamNetworkLogs(@PathVariable String reportId, HttpServletRequest request) {
+        try {
+            long saved = reportService.ingestNetworkLogs(request.getInputStream(), reportId);
+            return ResponseEntity.ok(new ResponseDTO(true, "Network logs saved successfully", saved));
+        } catch (IllegalArgumentException | JsonProcessingException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(new ResponseDTO(false, "Invalid network logs, none were saved", e.getMessage()));
+        } catch (ReportNotFoundException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(new ResponseDTO(false, "Report not found", e.getMessage()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(new ResponseDTO(false, "An error occurred while saving network logs, none were saved", e.getMessage()));
+        }
+    }
+
     /**
      * Retrieves network logs for a specific report by its ID.
      *
@@ -263,6 +460,9 @@ public class ReportsController {
      * @param appId The ID of the application for which to retrieve bug reports.
      * @param page  The page number for paginated results.
      * @param size  The number of bug reports to retrieve per page.
+     * @param keyset When true, pages are addressed by {@code cursor} instead of {@code page}.
+     * @param cursor The {@code nextCursor} of the previous keyset page, omitted for the first page.
+     * @param includeTotal Whether to count all reports of the application for the page metadata.
      * @return ResponseEntity with a ResponseDTO containing the retrieved bug reports.
      */
     @GetMapping("")
@@ -270,13 +470,18 @@ public class ReportsController {
     public ResponseEntity<ResponseDTO> getReports(@RequestParam String appId,
                                                   @RequestParam(defaultValue = "0") int page,
                                                   @RequestParam(defaultValue = "10") int size,
+                                                  @RequestParam(defaultValue = "false") boolean keyset,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(defaultValue = "true") boolean includeTotal,
                                                   Authentication authentication) {
         try {
             Organisation organisation = applicationService.getOrganisationFromObject(authentication.getPrincipal());
             if (organisation != null) {
                 String orgId = String.valueOf(organisation.getId());
                 if (utilsService.doesAppBelongToThisOrg(appId, orgId)) {
-                    var response = reportService.getReportsByAppId(appId, page, size);
+                    var response = keyset
+                            ? reportService.getReportsByAppIdAfterCursor(appId, cursor, size, includeTotal)
+                            : reportService.getReportsByAppId(appId, page, size, includeTotal);
                     return new ResponseEntity<>(new ResponseDTO(true, "Bugs fetched successfully", response), HttpStatus.OK);
                 } else {
                     return new ResponseEntity<>(new ResponseDTO(false, "Access denied or application does not exist.", null), HttpStatus.BAD_REQUEST);
@@ -284,6 +489,8 @@ public class ReportsController {
             } else {
                 return new ResponseEntity<>(new ResponseDTO(false, "Invalid token or user not found", null), HttpStatus.UNAUTHORIZED);
             }
+        } catch (IllegalArgumentException ex) {
+            return new ResponseEntity<>(new ResponseDTO(false, ex.getMessage(), null), HttpStatus.BAD_REQUEST);
         } catch (NullPointerException ex) {
             return new ResponseEntity<>(new ResponseDTO(false, "Invalid token or user not found", null), HttpStatus.UNAUTHORIZED);
         } catch (Exception ex) {
@@ -0,0 +1,28 @@
+package com.quashbugs.quash.dto.miscellaneous;
+
+import com.quashbugs.quash.model.Organisation;
+import com.quashbugs.quash.model.SessionRenderer;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import net.minidev.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * The parts of an application that are read on hot paths, as cached by
+ * {@link com.quashbugs.quash.service.AppMetadataCache}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppMetadataDTO {
+
+    private String appId;
+    private String appName;
+    private Organisation organisation;
+    private Map<String, JSONObject> integrationKeyMap;
+    private SessionRenderer sessionRenderer;
+}
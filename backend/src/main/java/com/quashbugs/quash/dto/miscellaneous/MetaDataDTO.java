@@ -12,9 +12,11 @@ import lombok.NoArgsConstructor;
 public
 class MetaDataDTO {
 
-    private int currentPage;
-    private int totalPages;
-    private long totalRecords;
+    private Integer currentPage;
+    private Integer totalPages;
+    private Long totalRecords;
     private int perPage;
+    private boolean hasMore;
+    private String nextCursor;
 
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.quashbugs.quash.dto.miscellaneous;
+
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A multipart file backed by a temporary file on local disk. Closing it deletes the file.
+ */
+public class TempFileMultipartDTO implements MultipartFile, Closeable {
+    private final Path path;
+    private final String fileName;
+    private final String contentType;
+
+    public TempFileMultipartDTO(Path path, String fileName, String contentType) {
+        this.path = path;
+        this.fileName = fileName;
+        this.contentType = contentType;
+    }
+
+    public Path getPath() {
+        return this.path;
+    }
+
+    @Override
+    public String getName() {
+        return this.fileName;
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return this.fileName;
+    }
+
+    @Override
+    public String getContentType() {
+        return this.contentType;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return getSize() == 0;
+    }
+
+    @Override
+    public long getSize() {
+        try {
+            return Files.size(this.path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    @Override
+    public byte[] getBytes() throws IOException {
+        return Files.readAllBytes(this.path);
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        return Files.newInputStream(this.path);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException, IllegalStateException {
+        Files.copy(this.path, dest.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Override
+    public void close() throws IOException {
+        Files.deleteIfExists(this.path);
+    }
+}
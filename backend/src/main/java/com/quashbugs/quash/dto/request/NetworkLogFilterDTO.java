@@ -0,0 +1,18 @@
+package com.quashbugs.quash.dto.request;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NetworkLogFilterDTO {
+    private Integer minStatus;
+    private Integer maxStatus;
+    private String method;
+    private String urlPrefix;
+    private Long minDurationMs;
+}
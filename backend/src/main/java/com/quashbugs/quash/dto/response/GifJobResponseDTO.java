@@ -0,0 +1,20 @@
+package com.quashbugs.quash.dto.response;
+
+import com.quashbugs.quash.model.GifStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class GifJobResponseDTO {
+    private String jobId;
+    private String reportId;
+    private GifStatus status;
+    private int attempts;
+    private String errorMessage;
+    private String mediaUrl;
+}
@@ -0,0 +1,19 @@
+package com.quashbugs.quash.dto.response;
+
+import com.quashbugs.quash.model.IngestStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IngestJobResponseDTO {
+    private String jobId;
+    private String reportId;
+    private IngestStatus status;
+    private int attempts;
+    private String errorMessage;
+}
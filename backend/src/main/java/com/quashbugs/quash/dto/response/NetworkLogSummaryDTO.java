@@ -0,0 +1,22 @@
+package com.quashbugs.quash.dto.response;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class NetworkLogSummaryDTO {
+    private String id;
+    private String requestUrl;
+    private String requestMethod;
+    private Integer responseCode;
+    private Long durationMs;
+    private String errorMessage;
+    private String timeStamp;
+    private Long requestBodySize;
+    private Long responseBodySize;
+}
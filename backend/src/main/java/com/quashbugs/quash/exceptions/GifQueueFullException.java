@@ -0,0 +1,7 @@
+package com.quashbugs.quash.exceptions;
+
+public class GifQueueFullException extends Throwable {
+    public GifQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.quashbugs.quash.exceptions;
+
+public class IngestQueueFullException extends Throwable {
+    public IngestQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -21,6 +21,8 @@ public class BugMedia {
     private String bugId;
     private String mediaRef;
     private String mediaUrl;
+    private String thumbnailRef;
+    private String thumbnailUrl;
     private Date createdAt;
     private MediaType mediaType;
 }
@@ -3,6 +3,7 @@ package com.quashbugs.quash.model;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -10,6 +11,7 @@ import org.springframework.data.mongodb.core.mapping.Document;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "device_metadata")
+@CompoundIndex(name = "device_os_organisation", def = "{'device': 1, 'os': 1, 'organisation': 1}")
 public class DeviceMetadata {
     private String id;
     private String device;  // e.g. "Samsung Galaxy S21"
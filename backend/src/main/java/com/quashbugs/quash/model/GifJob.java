@@ -0,0 +1,48 @@
+package com.quashbugs.quash.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "gif-jobs")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+public class GifJob {
+    @Id
+    private String id;
+    @Indexed
+    private String reportId;
+    /**
+     * The report ID while the job is queued or running, unset once it has finished. The unique
+     * index on it allows only one active job per report.
+     */
+    @Indexed(unique = true, sparse = true)
+    private String activeReportId;
+    private GifStatus status;
+    private int attempts;
+    private String workerId;
+    private Date leaseExpiresAt;
+    /**
+     * Set when a failed attempt is queued for a retry; the job is not claimed before then.
+     */
+    private Date notBefore;
+    private String mediaRef;
+    private String errorMessage;
+    private Date createdAt;
+    private Date updatedAt;
+    private Date completedAt;
+    private String spillHost;
+    private String spillDir;
+    private List<String> spillContentTypes;
+}
@@ -2,6 +2,7 @@ package com.quashbugs.quash.model;
 
 public enum GifStatus {
     NOT_INITIATED,
+    QUEUED,
     PROCESSING,
     COMPLETED,
     FAILED,
@@ -0,0 +1,44 @@
+package com.quashbugs.quash.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "ingest-jobs")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+public class IngestJob {
+    @Id
+    private String id;
+    @Indexed(unique = true, sparse = true)
+    private String idempotencyKey;
+    @Indexed
+    private String reportId;
+    private long orgId;
+    private IngestStatus status;
+    private int attempts;
+    private String workerId;
+    private Date leaseExpiresAt;
+    private String errorMessage;
+    private Date createdAt;
+    private Date updatedAt;
+    private Date completedAt;
+    private String spoolHost;
+    private String spoolDir;
+    private List<String> mediaContentTypes;
+    private List<String> mediaFileNames;
+    private String crashLogContentType;
+    private String crashLogFileName;
+    private DeviceMetadata deviceMetadata;
+}
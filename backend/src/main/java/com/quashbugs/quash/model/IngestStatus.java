@@ -0,0 +1,8 @@
+package com.quashbugs.quash.model;
+
+public enum IngestStatus {
+    QUEUED,
+    PROCESSING,
+    COMPLETED,
+    FAILED
+}
@@ -6,6 +6,7 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.DBRef;
 import org.springframework.data.mongodb.core.mapping.Document;
 
@@ -18,6 +19,8 @@ import java.util.LinkedHashMap;
 @AllArgsConstructor
 @Entity
 @Document(collection = "integrations")
+@CompoundIndex(name = "organisation_type", def = "{'organisation': 1, 'integrationType': 1}")
+@CompoundIndex(name = "settings_team_id", def = "{'settings.teamId': 1}", sparse = true)
 public class Integration {
 
     @Id
@@ -0,0 +1,31 @@
+package com.quashbugs.quash.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.Date;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document(collection = "media-blobs")
+public class MediaBlob {
+    @Id
+    private String objectName;
+    private long refCount;
+    private boolean uploaded;
+    /**
+     * Set by the release that dropped the last reference while the object is being deleted. The
+     * entry is removed once the object is gone.
+     */
+    private boolean deleting;
+    private long size;
+    private String contentType;
+    private Date createdAt;
+    private Date updatedAt;
+}
@@ -5,6 +5,8 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.util.Map;
@@ -14,15 +16,28 @@ import java.util.Map;
 @NoArgsConstructor
 @AllArgsConstructor
 @Document(collection = "network-logs")
+@CompoundIndex(name = "report_id", def = "{'reportId': 1, '_id': 1}")
+@CompoundIndex(name = "report_response_code", def = "{'reportId': 1, 'responseCode': 1}")
+@CompoundIndex(name = "report_request_method", def = "{'reportId': 1, 'requestMethod': 1}")
+@CompoundIndex(name = "report_request_url", def = "{'reportId': 1, 'requestUrl': 1}")
+@CompoundIndex(name = "report_duration", def = "{'reportId': 1, 'durationMs': 1}")
 public class NetworkLog {
+    @Id
+    private String id;
     private String reportId;
     private String requestUrl;
     private String requestMethod;
     private Map<String, String> requestHeaders;
     private String requestBody;
+    private String requestBodyRef;
+    private String requestBodyHash;
+    private Long requestBodySize;
     private Integer responseCode;
     private Map<String, String> responseHeaders;
     private String responseBody;
+    private String responseBodyRef;
+    private String responseBodyHash;
+    private Long responseBodySize;
     private Long durationMs;
     private String errorMessage;
     private String exceptionMessage;
@@ -30,5 +30,6 @@ public class QuashClientApplication {
     private Map<String, JSONObject> integrationKeyMap;
     @DBRef
     private Organisation organisation;
+    private SessionRenderer sessionRenderer;
 
 }
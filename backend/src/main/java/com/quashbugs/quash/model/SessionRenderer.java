@@ -0,0 +1,6 @@
+package com.quashbugs.quash.model;
+
+public enum SessionRenderer {
+    GIF,
+    MP4
+}
@@ -7,10 +7,12 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 
 import java.util.List;
 
-public interface ReportRepository extends MongoRepository<Report, String> {
+public interface ReportRepository extends MongoRepository<Report, String>, ReportRepositoryCustom {
     Page<Report> findByAppId(String appId, Pageable pageable);
 
     List<Report> findByAppId(String appId);
 
+    long countByAppId(String appId);
+
     void deleteByIdIn(List<String> ids);
 }
@@ -0,0 +1,31 @@
+package com.quashbugs.quash.repo;
+
+import com.quashbugs.quash.model.Report;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Date;
+import java.util.List;
+
+public interface ReportRepositoryCustom {
+
+    /**
+     * Loads a page of reports for an app together with their media, GIF bitmaps, crash log,
+     * device metadata and reporter in one aggregation, instead of resolving every DBRef of
+     * every report with its own query.
+     */
+    List<Report> findPageWithReferencesByAppId(String appId, Pageable pageable);
+
+    /**
+     * Same as {@link #findPageWithReferencesByAppId(String, Pageable)} but without a total count,
+     * reading one extra report to tell whether another page exists.
+     */
+    Slice<Report> findSliceWithReferencesByAppId(String appId, Pageable pageable);
+
+    /**
+     * Keyset variant for reports ordered by {@code createdAt} and {@code _id}, both descending.
+     * Returns the reports that come after the given position, or the first reports when
+     * {@code createdAt} is null, so page cost does not grow with depth.
+     */
+    Slice<Report> findSliceWithReferencesByAppIdBefore(String appId, Date createdAt, String id, int size);
+}
@@ -0,0 +1,200 @@
+package com.quashbugs.quash.repo;
+
+import com.mongodb.DBRef;
+import com.quashbugs.quash.model.*;
+import org.bson.Document;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Criteria;
+
+import java.util.*;
+
+public class ReportRepositoryCustomImpl implements ReportRepositoryCustom {
+
+    private static final String IDS_PREFIX = "_refIds_";
+
+    private static final String DOCS_PREFIX = "_refDocs_";
+
+    private final MongoOperations mongoOperations;
+
+    public ReportRepositoryCustomImpl(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    private record Reference(String field, Class<?> type, boolean many) {
+    }
+
+    private static final List<Reference> REFERENCES = List.of(
+            new Reference("listOfMedia", BugMedia.class, true),
+            new Reference("listOfGif", GifBitmap.class, true),
+            new Reference("crashLog", CrashLog.class, false),
+            new Reference("deviceMetadata", DeviceMetadata.class, false),
+            new Reference("reportedBy", User.class, false)
+    );
+
+    @Override
+    public List<Report> findPageWithReferencesByAppId(String appId, Pageable pageable) {
+        if (pageable.isUnpaged()) {
+            return aggregate(Criteria.where("appId").is(appId), pageable.getSort(), 0, 0);
+        }
+        return aggregate(Criteria.where("appId").is(appId), pageable.getSort(), pageable.getOffset(), pageable.getPageSize());
+    }
+
+    @Override
+    public Slice<Report> findSliceWithReferencesByAppId(String appId, Pageable pageable) {
+        List<Report> reports = aggregate(Criteria.where("appId").is(appId), pageable.getSort(), pageable.getOffset(), pageable.getPageSize() + 1);
+        return toSlice(reports, pageable);
+    }
+
+    @Override
+    public Slice<Report> findSliceWithReferencesByAppIdBefore(String appId, Date createdAt, String id, int size) {
+        Criteria criteria = Criteria.where("appId").is(appId);
+        if (createdAt != null) {
+            criteria = criteria.orOperator(
+                    Criteria.where("createdAt").lt(createdAt),
+                    Criteria.where("createdAt").is(createdAt).and("_id").lt(id));
+        }
+        Pageable pageable = PageRequest.of(0, size, Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("_id")));
+        List<Report> reports = aggregate(criteria, pageable.getSort(), 0, size + 1);
+        return toSlice(reports, pageable);
+    }
+
+    private static Slice<Report> toSlice(List<Report> reports, Pageable pageable) {
+        boolean hasNext = reports.size() > pageable.getPageSize();
+        List<Report> content = hasNext ? reports.subList(0, pageable.getPageSize()) : reports;
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    private List<Report> aggregate(Criteria criteria, Sort sort, long skip, int limit) {
+        List<AggregationOperation> stages = new ArrayList<>();
+        stages.add(Aggregation.match(criteria));
+        if (sort.isSorted()) {
+            stages.add(Aggregation.sort(sort));
+        }
+        if (skip > 0) {
+            stages.add(Aggregation.skip(skip));
+        }
+        if (limit > 0) {
+            stages.add(Aggregation.limit(limit));
+        }
+        for (Reference reference : REFERENCES) {
+            stages.add(context -> new Document("$addFields",
+                    new Document(IDS_PREFIX + reference.field(), referencedIds(reference))));
+            stages.add(context -> new Document("$lookup", new Document("from", mongoOperations.getCollectionName(reference.type()))
+                    .append("localField", IDS_PREFIX + reference.field())
+                    .append("foreignField", "_id")
+                    .append("as", DOCS_PREFIX + reference.field())));
+        }
+
+        List<Document> rawReports = mongoOperations.aggregate(Aggregation.newAggregation(stages), Report.class, Document.class)
+                .getMappedResults();
+        Map<Object, Organisation> organisations = new HashMap<>();
+        List<Report> reports = new ArrayList<>(rawReports.size());
+        for (Document rawReport : rawReports) {
+            reports.add(toReport(rawReport, organisations));
+        }
+        return reports;
+    }
+
+    /**
+     * DBRefs are stored as {$ref, $id} sub-documents, and aggregation field paths cannot start
+     * with '$', so the id is read through $objectToArray.
+     */
+    private static Document referencedIds(Reference reference) {
+        if (reference.many()) {
+            return new Document("$map", new Document("input", new Document("$ifNull", List.of("$" + reference.field(), List.of())))
+                    .append("as", "ref")
+                    .append("in", dbRefId("$$ref")));
+        }
+        return dbRefId("$" + reference.field());
+    }
+
+    private static Document dbRefId(String dbRef) {
+        Document idEntries = new Document("$filter", new Document("input", new Document("$objectToArray", dbRef))
+                .append("cond", new Document("$eq", List.of("$$this.k", new Document("$literal", "$id")))));
+        return new Document("$arrayElemAt", List.of(new Document("$map", new Document("input", idEntries).append("in", "$$this.v")), 0));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Report toReport(Document rawReport, Map<Object, Organisation> organisations) {
+        Map<String, List<Object>> resolved = new HashMap<>();
+        for (Reference reference : REFERENCES) {
+            Object ids = rawReport.remove(IDS_PREFIX + reference.field());
+            List<Document> documents = (List<Document>) rawReport.remove(DOCS_PREFIX + reference.field());
+            if (rawReport.remove(reference.field()) == null) {
+                continue;
+            }
+            resolved.put(reference.field(), readInOrder(reference, ids, documents, organisations));
+        }
+
+        MongoConverter converter = mongoOperations.getConverter();
+        Report report = converter.read(Report.class, rawReport);
+        if (resolved.containsKey("listOfMedia")) {
+            report.setListOfMedia((List<BugMedia>) (List<?>) resolved.get("listOfMedia"));
+        }
+        if (resolved.containsKey("listOfGif")) {
+            report.setListOfGif((List<GifBitmap>) (List<?>) resolved.get("listOfGif"));
+        }
+        report.setCrashLog((CrashLog) first(resolved.get("crashLog")));
+        report.setDeviceMetadata((DeviceMetadata) first(resolved.get("deviceMetadata")));
+        report.setReportedBy((User) first(resolved.get("reportedBy")));
+        return report;
+    }
+
+    /**
+     * $lookup does not keep the order of the local array, so documents are put back in the
+     * order of the stored references. Dangling references are skipped.
+     */
+    private List<Object> readInOrder(Reference reference, Object ids, List<Document> documents, Map<Object, Organisation> organisations) {
+        Map<Object, Document> documentsById = new HashMap<>();
+        if (documents != null) {
+            for (Document document : documents) {
+                documentsById.put(document.get("_id"), document);
+            }
+        }
+        List<?> orderedIds = ids instanceof List<?> list ? list : Collections.singletonList(ids);
+        List<Object> values = new ArrayList<>();
+        for (Object id : orderedIds) {
+            Document document = documentsById.get(id);
+            if (document != null) {
+                values.add(readReferenced(reference.type(), document, organisations));
+            }
+        }
+        return values;
+    }
+
+    private Object readReferenced(Class<?> type, Document document, Map<Object, Organisation> organisations) {
+        if (type == DeviceMetadata.class) {
+            // Every device on a page belongs to the same few organisations, so resolve each one once.
+            Object organisationRef = document.remove("organisation");
+            DeviceMetadata deviceMetadata = mongoOperations.getConverter().read(DeviceMetadata.class, document);
+            Object organisationId = dbRefIdOf(organisationRef);
+            if (organisationId != null) {
+                deviceMetadata.setOrganisation(organisations.computeIfAbsent(organisationId,
+                        id -> mongoOperations.findById(id, Organisation.class)));
+            }
+            return deviceMetadata;
+        }
+        return mongoOperations.getConverter().read(type, document);
+    }
+
+    private static Object dbRefIdOf(Object dbRef) {
+        if (dbRef instanceof DBRef ref) {
+            return ref.getId();
+        } else if (dbRef instanceof Document document) {
+            return document.get("$id");
+        }
+        return null;
+    }
+
+    private static Object first(List<Object> values) {
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+}
@@ -5,11 +5,17 @@ import com.quashbugs.quash.repo.*;
 import com.quashbugs.quash.util.StorageProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.data.util.Pair;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
-import java.util.UUID;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.Semaphore;
 
 import static com.quashbugs.quash.constants.Constants.*;
 
@@ -21,43 +27,84 @@ public abstract class AbstractStorageService implements StorageService {
 
     protected final CrashLogRepository crashLogRepository;
 
-    protected final ApplicationRepository applicationRepository;
+    protected final AppMetadataCache appMetadataCache;
 
     protected final ChatUploadRepository chatUploadRepository;
 
     protected final StorageProperties storageProperties;
 
+    private final SignedUrlCache signedUrlCache;
+
+    private final MediaBlobRegistry mediaBlobRegistry;
+
+    private final Semaphore uploadPermits;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(AbstractStorageService.class);
 
     protected AbstractStorageService(BugMediaRepository bugMediaRepository,
                                      GifMediaRepository gifMediaRepository,
                                      CrashLogRepository crashLogRepository,
-                                     ApplicationRepository applicationRepository,
-                                     ChatUploadRepository chatUploadRepository, StorageProperties storageProperties) {
+                                     AppMetadataCache appMetadataCache,
+                                     ChatUploadRepository chatUploadRepository, StorageProperties storageProperties,
+                                     SignedUrlCache signedUrlCache,
+                                     MediaBlobRegistry mediaBlobRegistry) {
         this.bugMediaRepository = bugMediaRepository;
         this.gifMediaRepository = gifMediaRepository;
         this.crashLogRepository = crashLogRepository;
-        this.applicationRepository = applicationRepository;
+        this.appMetadataCache = appMetadataCache;
         this.chatUploadRepository = chatUploadRepository;
         this.storageProperties = storageProperties;
+        this.signedUrlCache = signedUrlCache;
+        this.mediaBlobRegistry = mediaBlobRegistry;
+        this.uploadPermits = new Semaphore(storageProperties.getUploadMaxConcurrency(), true);
     }
 
+    /**
+     * Stores the file under a name derived from its SHA-256 hash. A file whose content is already
+     * stored for the same app is not uploaded again and only adds a reference to the object.
+     */
     @Override
     public Pair<String, MediaType> upload(MultipartFile mediaFile, Report report) throws IOException {
         String mimeType = mediaFile.getContentType();
         MediaType mediaType = determineMediaType(mimeType);
 
-        byte[] content = extractBytesFromMedia(mediaFile);
-        String objectName = generateUniqueObjectName(report, mediaType, mediaFile.getOriginalFilename(), mimeType);
+        String objectName = generateContentObjectName(report, mediaType, contentHash(mediaFile), mediaFile.getOriginalFilename(), mimeType);
+        if (!mediaBlobRegistry.acquire(objectName, mediaFile.getSize(), mimeType)) {
+            return Pair.of(objectName, mediaType);
+        }
 
-        uploadWithRetries(content, objectName, mimeType);
+        try {
+            acquireUploadPermit();
+            try {
+                uploadWithRetries(mediaFile, mediaFile.getSize(), objectName, mimeType);
+            } finally {
+                uploadPermits.release();
+            }
+        } catch (IOException | RuntimeException e) {
+            // Nothing will reference the object, so the reference taken above is dropped again.
+            releaseUpload(objectName);
+            throw e;
+        }
+        mediaBlobRegistry.markUploaded(objectName);
         return Pair.of(objectName, mediaType);
     }
 
+    @Override
+    public void uploadObject(String objectName, byte[] content, String mimeType) throws IOException {
+        acquireUploadPermit();
+        try {
+            uploadWithRetries(new ByteArrayResource(content), content.length, objectName, mimeType);
+        } finally {
+            uploadPermits.release();
+        }
+    }
+
     @Override
     public void deleteMedia(BugMedia bugMedia) {
         try {
-            deleteBlob(bugMedia.getMediaRef());
+            if (releaseObject(bugMedia.getMediaRef()) && bugMedia.getThumbnailRef() != null) {
+                deleteObject(bugMedia.getThumbnailRef());
+            }
             bugMediaRepository.delete(bugMedia);
         } catch (Exception e) {
             LOGGER.error("Error deleting media: ", e);
@@ -67,7 +114,7 @@ public abstract class AbstractStorageService implements StorageService {
     @Override
     public void deleteCrashLog(CrashLog crashLog) {
         try {
-            deleteBlob(crashLog.getMediaRef());
+            releaseObject(crashLog.getMediaRef());
             crashLogRepository.delete(crashLog);
         } catch (Exception e) {
             LOGGER.error("Error deleting crash logs: {}", e.getMessage(), e);
@@ -77,7 +124,7 @@ public abstract class AbstractStorageService implements StorageService {
     @Override
     public boolean deleteCloudMediaForChatUpload(ChatUploads chatUpload) {
         try {
-            deleteBlob(chatUpload.getMediaRef());
+            releaseObject(chatUpload.getMediaRef());
             chatUploadRepository.delete(chatUpload);
             return true;
         } catch (Exception e) {
@@ -89,17 +136,93 @@ public abstract class AbstractStorageService implements StorageService {
     @Override
     public void deleteGifBitmap(GifBitmap gifBitmap) {
         try {
-            deleteBlob(gifBitmap.getMediaRef());
+            releaseObject(gifBitmap.getMediaRef());
             gifMediaRepository.delete(gifBitmap);
         } catch (Exception e) {
             LOGGER.error("Error deleting GifBitmap: {}", e.getMessage(), e);
         }
     }
 
-    protected abstract void uploadWithRetries(byte[] content, String objectName, String mimeType);
+    @Override
+    public void releaseUpload(String objectName) {
+        try {
+            releaseObject(objectName);
+        } catch (Exception e) {
+            LOGGER.error("Error releasing upload {}: {}", objectName, e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public String generateSignedUrl(String objectName) {
+        return signedUrlCache.get(getProviderName(), objectName, this::signUrl);
+    }
+
+    @Override
+    public void deleteObject(String objectName) {
+        deleteBlob(objectName);
+        signedUrlCache.invalidate(getProviderName(), objectName);
+    }
+
+    /**
+     * Drops a reference to an object stored by {@link #upload} and deletes the object once it is
+     * no longer referenced. Returns whether the object was deleted.
+     */
+    private boolean releaseObject(String objectName) {
+        if (!mediaBlobRegistry.release(objectName)) {
+            return false;
+        }
+        try {
+            deleteObject(objectName);
+        } catch (RuntimeException e) {
+            mediaBlobRegistry.deleteFailed(objectName);
+            throw e;
+        }
+        mediaBlobRegistry.deleted(objectName);
+        return true;
+    }
+
+    private static String contentHash(MultipartFile mediaFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+        try (InputStream in = mediaFile.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private void acquireUploadPermit() throws IOException {
+        try {
+            uploadPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for an upload slot", e);
+        }
+    }
+
+    /**
+     * Streams the content to the bucket. Implementations must open a fresh stream from
+     * {@code content} for every attempt and must not buffer more than
+     * {@link StorageProperties#getUploadPartSize()} bytes at a time.
+     */
+    protected abstract void uploadWithRetries(InputStreamSource content, long contentLength, String objectName, String mimeType);
 
     protected abstract void deleteBlob(String blobName);
 
+    /**
+     * Creates a read-only URL for the object that stays valid for {@link com.quashbugs.quash.constants.Constants#SIGNED_URL_EXPIRY_DAYS} days.
+     */
+    protected abstract String signUrl(String objectName);
+
+    protected abstract String getProviderName();
+
     protected MediaType determineMediaType(String mimeType) throws IOException {
         if (ALLOWED_IMAGE_MIME_TYPES.contains(mimeType)) {
             return MediaType.IMAGE;
@@ -118,23 +241,23 @@ public abstract class AbstractStorageService implements StorageService {
         }
     }
 
-    protected byte[] extractBytesFromMedia(MultipartFile mediaFile) throws IOException {
-        return mediaFile.getBytes();
-    }
-
-    protected String generateUniqueObjectName(Report report, MediaType mediaType, String originalFilename, String mimeType) {
+    protected String generateContentObjectName(Report report, MediaType mediaType, String contentHash, String originalFilename, String mimeType) {
         String basePath = determineOrganization(report);
         if (mediaType == MediaType.CRASH) {
             basePath += "/crashlogs";
         } else {
             basePath += "/media";
         }
-        return basePath + "/" + UUID.randomUUID() + getFileExtension(originalFilename, mimeType);
+        return basePath + "/" + contentHash + getFileExtension(originalFilename, mimeType);
     }
 
     protected String determineOrganization(Report report) {
-        var appId = report.getAppId();
-        var app = applicationRepository.findById(appId);
+        return objectPrefix(report.getAppId());
+    }
+
+    @Override
+    public String objectPrefix(String appId) {
+        var app = appMetadataCache.get(appId);
         if (app.isPresent()) {
             var organisation = app.get().getOrganisation();
             if (organisation != null) {
@@ -0,0 +1,84 @@
+package com.quashbugs.quash.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.quashbugs.quash.dto.miscellaneous.AppMetadataDTO;
+import com.quashbugs.quash.model.QuashClientApplication;
+import com.quashbugs.quash.repo.ApplicationRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Optional;
+
+/**
+ * Caches application metadata by app ID, so uploads, ownership checks and integration lookups
+ * do not load the application and its organisation from Mongo every time. Entries are dropped
+ * when the application or any organisation is saved or deleted through Spring Data, see
+ * {@link com.quashbugs.quash.callbacks.ApplicationModelListener}, and otherwise expire after
+ * {@code app-metadata.cache.ttl-seconds} so changes made by other instances are picked up.
+ */
+@Component
+public class AppMetadataCache {
+
+    private final ApplicationRepository applicationRepository;
+
+    private final Cache<String, AppMetadataDTO> cache;
+
+    @Autowired
+    public AppMetadataCache(ApplicationRepository applicationRepository,
+                            @Value("${app-metadata.cache.ttl-seconds:300}") long ttlSeconds,
+                            @Value("${app-metadata.cache.max-size:10000}") long maxSize,
+                            MeterRegistry meterRegistry) {
+        this.applicationRepository = applicationRepository;
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "app-metadata");
+    }
+
+    /**
+     * Returns the metadata of the application, or empty if it does not exist. Unknown apps are
+     * not cached, so a newly registered app is found right away.
+     */
+    public Optional<AppMetadataDTO> get(String appId) {
+        if (appId == null) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(cache.get(appId, id -> applicationRepository.findById(id).map(AppMetadataCache::toMetadata).orElse(null)));
+    }
+
+    public boolean doesAppBelongToOrg(String appId, String orgId) {
+        return get(appId)
+                .map(AppMetadataDTO::getOrganisation)
+                .map(organisation -> String.valueOf(organisation.getId()).equals(orgId))
+                .orElse(false);
+    }
+
+    public void invalidate(String appId) {
+        cache.invalidate(appId);
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    private static AppMetadataDTO toMetadata(QuashClientApplication application) {
+        return AppMetadataDTO.builder()
+                .appId(application.getId())
+                .appName(application.getAppName())
+                .organisation(application.getOrganisation())
+                .integrationKeyMap(application.getIntegrationKeyMap() == null
+                        ? Collections.emptyMap()
+                        : Collections.unmodifiableMap(new HashMap<>(application.getIntegrationKeyMap())))
+                .sessionRenderer(application.getSessionRenderer())
+                .build();
+    }
+}
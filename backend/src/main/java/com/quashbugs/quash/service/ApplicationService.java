@@ -4,6 +4,7 @@ import com.quashbugs.quash.dto.request.ApplicationRequestBodyDTO;
 import com.quashbugs.quash.exceptions.ReportNotFoundException;
 import com.quashbugs.quash.model.Organisation;
 import com.quashbugs.quash.model.QuashClientApplication;
+import com.quashbugs.quash.model.SessionRenderer;
 import com.quashbugs.quash.model.TeamMember;
 import com.quashbugs.quash.model.User;
 import com.quashbugs.quash.repo.ApplicationRepository;
@@ -180,6 +181,20 @@ public class ApplicationService {
         }
     }
 
+    /**
+     * Sets how the session recordings of the app's reports are rendered.
+     */
+    public QuashClientApplication setSessionRenderer(String appId, SessionRenderer sessionRenderer, User user) {
+        TeamMember teamMember = teamMemberRepository.findByUser(user);
+        if (teamMember == null || !utilsService.doesAppBelongToThisOrg(appId, String.valueOf(teamMember.getOrganisation().getId()))) {
+            throw new IllegalStateException("Organisation mismatch, can't update app");
+        }
+        QuashClientApplication application = applicationRepository.findById(appId)
+                .orElseThrow(() -> new IllegalStateException("App is not present"));
+        application.setSessionRenderer(sessionRenderer);
+        return applicationRepository.save(application);
+    }
+
     public Organisation getOrganisationFromObject(Object principalObj) {
         if (principalObj instanceof Optional<?> optional) {
             if (optional.isPresent()) {
@@ -0,0 +1,91 @@
+package com.quashbugs.quash.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.quashbugs.quash.model.Organisation;
+import com.quashbugs.quash.model.User;
+import com.quashbugs.quash.repo.OrganisationRepository;
+import com.quashbugs.quash.repo.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Caches the users and organisations that authenticated requests resolve to, keyed by the
+ * subject and the orgId claim of their token. Entries are dropped when the user or organisation
+ * is saved or deleted through Spring Data, see {@link com.quashbugs.quash.callbacks.UserModelListener}
+ * and {@link com.quashbugs.quash.callbacks.OrganisationModelListener}, and otherwise expire after
+ * {@code auth.principal-cache.ttl-seconds} so changes made by other instances are picked up
+ * quickly. Unknown users and organisations are not cached.
+ */
+@Component
+public class AuthPrincipalCache {
+
+    private final UserRepository userRepository;
+
+    private final OrganisationRepository organisationRepository;
+
+    private final Cache<String, User> users;
+
+    private final Cache<Long, Organisation> organisations;
+
+    @Autowired
+    public AuthPrincipalCache(UserRepository userRepository,
+                              OrganisationRepository organisationRepository,
+                              @Value("${auth.principal-cache.ttl-seconds:60}") long ttlSeconds,
+                              @Value("${auth.principal-cache.max-size:10000}") long maxSize,
+                              MeterRegistry meterRegistry) {
+        this.userRepository = userRepository;
+        this.organisationRepository = organisationRepository;
+        this.users = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        this.organisations = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "auth-principals-users");
+        CaffeineCacheMetrics.monitor(meterRegistry, organisations, "auth-principals-organisations");
+    }
+
+    /**
+     * Returns a copy of the cached user, so a request that changes its principal does not change
+     * the one seen by the user's other requests.
+     */
+    public Optional<User> getUser(String workEmail) {
+        return Optional.ofNullable(users.get(workEmail, email -> userRepository.findByWorkEmail(email).orElse(null)))
+                .map(user -> user.toBuilder().build());
+    }
+
+    public Optional<Organisation> getOrganisation(long orgId) {
+        return Optional.ofNullable(organisations.get(orgId, id -> organisationRepository.findOptionalById(id).orElse(null)));
+    }
+
+    /**
+     * Drops the cached user with the given ID. Users are cached by work email, which may just
+     * have changed, so the entries are matched by ID.
+     */
+    public void invalidateUser(String userId) {
+        users.asMap().values().removeIf(user -> userId.equals(user.getId()));
+    }
+
+    public void invalidateAllUsers() {
+        users.invalidateAll();
+    }
+
+    public void invalidateOrganisation(long orgId) {
+        organisations.invalidate(orgId);
+    }
+
+    public void invalidateAllOrganisations() {
+        organisations.invalidateAll();
+    }
+}
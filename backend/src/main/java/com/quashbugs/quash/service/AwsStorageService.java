@@ -1,5 +1,6 @@
 package com.quashbugs.quash.service;
 
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.HttpMethod;
 import com.amazonaws.auth.AWSStaticCredentialsProvider;
 import com.amazonaws.auth.BasicAWSCredentials;
@@ -7,40 +8,55 @@ import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
 import com.amazonaws.services.s3.model.GeneratePresignedUrlRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerBuilder;
 import com.quashbugs.quash.repo.*;
 import com.quashbugs.quash.util.StorageProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.Date;
+import java.util.concurrent.TimeUnit;
 
 import static com.quashbugs.quash.constants.Constants.MAX_RETRIES;
+import static com.quashbugs.quash.constants.Constants.SIGNED_URL_EXPIRY_DAYS;
 
 @Service
 public class AwsStorageService extends AbstractStorageService {
 
     private final AmazonS3 s3Client;
 
+    private final TransferManager transferManager;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(AwsStorageService.class);
 
     @Autowired
     public AwsStorageService(BugMediaRepository bugMediaRepository,
                              GifMediaRepository gifMediaRepository,
                              CrashLogRepository crashLogRepository,
-                             ApplicationRepository applicationRepository,
+                             AppMetadataCache appMetadataCache,
                              ChatUploadRepository chatUploadRepository,
-                             StorageProperties storageProperties) {
-        super(bugMediaRepository, gifMediaRepository, crashLogRepository, applicationRepository, chatUploadRepository, storageProperties);
+                             StorageProperties storageProperties,
+                             SignedUrlCache signedUrlCache,
+                             MediaBlobRegistry mediaBlobRegistry) {
+        super(bugMediaRepository, gifMediaRepository, crashLogRepository, appMetadataCache, chatUploadRepository, storageProperties, signedUrlCache, mediaBlobRegistry);
 
         try {
             this.s3Client = AmazonS3ClientBuilder.standard()
                     .withRegion(storageProperties.getAwsRegion())
                     .withCredentials(new AWSStaticCredentialsProvider(new BasicAWSCredentials(storageProperties.getAwsAccessKey(), storageProperties.getAwsSecretKey())))
                     .build();
+            this.transferManager = TransferManagerBuilder.standard()
+                    .withS3Client(s3Client)
+                    .withMultipartUploadThreshold(storageProperties.getUploadPartSize())
+                    .withMinimumUploadPartSize(storageProperties.getUploadPartSize())
+                    .build();
         } catch (Exception e) {
             LOGGER.error("Error initializing AwsStorageService", e);
             throw new RuntimeException(e);
@@ -48,13 +64,18 @@ public class AwsStorageService extends AbstractStorageService {
     }
 
     @Override
-    protected void uploadWithRetries(byte[] content, String objectName, String mimeType) {
+    protected void uploadWithRetries(InputStreamSource content, long contentLength, String objectName, String mimeType) {
         for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
-            try {
+            try (InputStream in = content.getInputStream()) {
                 ObjectMetadata metadata = new ObjectMetadata();
                 metadata.setContentType(mimeType);
-                s3Client.putObject(storageProperties.getAwsBucketName(), objectName, new ByteArrayInputStream(content), metadata);
+                // A known length lets the SDK stream the body; objects above the part size become multipart uploads.
+                metadata.setContentLength(contentLength);
+                transferManager.upload(storageProperties.getAwsBucketName(), objectName, in, metadata).waitForCompletion();
                 return;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted while uploading media.", ex);
             } catch (Exception ex) {
                 logAndMaybeRetry(attempt, ex);
             }
@@ -68,11 +89,25 @@ public class AwsStorageService extends AbstractStorageService {
     }
 
     @Override
-    public String generateSignedUrl(String objectName) {
+    public InputStream openStream(String objectName) throws IOException {
+        try {
+            return s3Client.getObject(storageProperties.getAwsBucketName(), objectName).getObjectContent();
+        } catch (AmazonServiceException e) {
+            throw new IOException("Failed to read object: " + objectName, e);
+        }
+    }
+
+    @Override
+    protected String signUrl(String objectName) {
         GeneratePresignedUrlRequest generatePresignedUrlRequest = new GeneratePresignedUrlRequest(storageProperties.getAwsBucketName(), objectName)
                 .withMethod(HttpMethod.GET)
-                .withExpiration(new Date(System.currentTimeMillis() + 7 * 24 * 3600 * 1000)); // 7 days expiration
+                .withExpiration(new Date(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(SIGNED_URL_EXPIRY_DAYS)));
         URL url = s3Client.generatePresignedUrl(generatePresignedUrlRequest);
         return url.toString();
     }
+
+    @Override
+    protected String getProviderName() {
+        return "aws";
+    }
 }
@@ -1,10 +1,15 @@
 package com.quashbugs.quash.service;
 
+import com.azure.core.util.BinaryData;
+import com.azure.core.util.Context;
 import com.azure.storage.blob.BlobClient;
 import com.azure.storage.blob.BlobContainerClient;
 import com.azure.storage.blob.BlobServiceClient;
 import com.azure.storage.blob.BlobServiceClientBuilder;
 import com.azure.storage.blob.models.BlobHttpHeaders;
+import com.azure.storage.blob.models.BlobStorageException;
+import com.azure.storage.blob.models.ParallelTransferOptions;
+import com.azure.storage.blob.options.BlobParallelUploadOptions;
 import com.azure.storage.blob.sas.BlobSasPermission;
 import com.azure.storage.blob.sas.BlobServiceSasSignatureValues;
 import com.azure.storage.common.StorageSharedKeyCredential;
@@ -13,12 +18,15 @@ import com.quashbugs.quash.util.StorageProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 
-import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.OffsetDateTime;
 
 import static com.quashbugs.quash.constants.Constants.MAX_RETRIES;
+import static com.quashbugs.quash.constants.Constants.SIGNED_URL_EXPIRY_DAYS;
 
 @Service
 public class AzureStorageService extends AbstractStorageService {
@@ -33,10 +41,12 @@ public class AzureStorageService extends AbstractStorageService {
     public AzureStorageService(BugMediaRepository bugMediaRepository,
                                GifMediaRepository gifMediaRepository,
                                CrashLogRepository crashLogRepository,
-                               ApplicationRepository applicationRepository,
+                               AppMetadataCache appMetadataCache,
                                ChatUploadRepository chatUploadRepository,
-                               StorageProperties storageProperties) {
-        super(bugMediaRepository, gifMediaRepository, crashLogRepository, applicationRepository, chatUploadRepository, storageProperties);
+                               StorageProperties storageProperties,
+                               SignedUrlCache signedUrlCache,
+                               MediaBlobRegistry mediaBlobRegistry) {
+        super(bugMediaRepository, gifMediaRepository, crashLogRepository, appMetadataCache, chatUploadRepository, storageProperties, signedUrlCache, mediaBlobRegistry);
 
         try {
             StorageSharedKeyCredential credential = new StorageSharedKeyCredential(storageProperties.getAzureAccountName(), storageProperties.getAzureAccountKey());
@@ -52,12 +62,20 @@ public class AzureStorageService extends AbstractStorageService {
     }
 
     @Override
-    protected void uploadWithRetries(byte[] content, String objectName, String mimeType) {
+    protected void uploadWithRetries(InputStreamSource content, long contentLength, String objectName, String mimeType) {
+        long partSize = storageProperties.getUploadPartSize();
+        ParallelTransferOptions transferOptions = new ParallelTransferOptions()
+                .setBlockSizeLong(partSize)
+                .setMaxSingleUploadSizeLong(partSize)
+                .setMaxConcurrency(1);
         for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
-            try {
+            try (InputStream in = content.getInputStream()) {
                 BlobClient blobClient = containerClient.getBlobClient(objectName);
-                blobClient.upload(new ByteArrayInputStream(content), content.length, true);
-                blobClient.setHttpHeaders(new BlobHttpHeaders().setContentType(mimeType));
+                // Larger blobs are staged as blocks of the part size and committed at the end.
+                BlobParallelUploadOptions options = new BlobParallelUploadOptions(BinaryData.fromStream(in, contentLength))
+                        .setParallelTransferOptions(transferOptions)
+                        .setHeaders(new BlobHttpHeaders().setContentType(mimeType));
+                blobClient.uploadWithResponse(options, null, Context.NONE);
                 return;
             } catch (Exception ex) {
                 logAndMaybeRetry(attempt, ex);
@@ -73,10 +91,24 @@ public class AzureStorageService extends AbstractStorageService {
     }
 
     @Override
-    public String generateSignedUrl(String objectName) {
+    public InputStream openStream(String objectName) throws IOException {
+        try {
+            return containerClient.getBlobClient(objectName).openInputStream();
+        } catch (BlobStorageException e) {
+            throw new IOException("Failed to read object: " + objectName, e);
+        }
+    }
+
+    @Override
+    protected String signUrl(String objectName) {
         BlobClient blobClient = containerClient.getBlobClient(objectName);
-        BlobServiceSasSignatureValues sasValues = new BlobServiceSasSignatureValues(OffsetDateTime.now().plusDays(7), new BlobSasPermission().setReadPermission(true));
+        BlobServiceSasSignatureValues sasValues = new BlobServiceSasSignatureValues(OffsetDateTime.now().plusDays(SIGNED_URL_EXPIRY_DAYS), new BlobSasPermission().setReadPermission(true));
         String sasToken = blobClient.generateSas(sasValues);
         return blobClient.getBlobUrl() + "?" + sasToken;
     }
+
+    @Override
+    protected String getProviderName() {
+        return "azure";
+    }
 }
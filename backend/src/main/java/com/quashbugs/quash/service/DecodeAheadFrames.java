@@ -0,0 +1,85 @@
+package com.quashbugs.quash.service;
+
+import org.springframework.core.io.InputStreamSource;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads and decodes session frames in order on an executor, keeping at most {@code window} frames
+ * decoded or in flight ahead of the consumer. Frames backed by storage are fetched by the same
+ * tasks, so up to {@code window} reads overlap with encoding.
+ */
+final class DecodeAheadFrames implements AutoCloseable {
+
+    private final List<? extends InputStreamSource> frames;
+
+    private final Executor executor;
+
+    private final int window;
+
+    private final Deque<CompletableFuture<BufferedImage>> decoding = new ArrayDeque<>();
+
+    private int nextToDecode;
+
+    private int nextToReturn;
+
+    DecodeAheadFrames(List<? extends InputStreamSource> frames, Executor executor, int window) {
+        this.frames = frames;
+        this.executor = executor;
+        this.window = Math.max(1, window);
+    }
+
+    boolean hasNext() {
+        return nextToReturn < frames.size();
+    }
+
+    BufferedImage next() throws IOException {
+        while (nextToDecode < frames.size() && decoding.size() < window) {
+            decoding.add(decodeAsync(frames.get(nextToDecode), nextToDecode));
+            nextToDecode++;
+        }
+        nextToReturn++;
+        return await(decoding.poll());
+    }
+
+    @Override
+    public void close() {
+        decoding.forEach(future -> future.cancel(true));
+        decoding.clear();
+    }
+
+    private CompletableFuture<BufferedImage> decodeAsync(InputStreamSource frame, int index) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (InputStream in = frame.getInputStream()) {
+                BufferedImage image = ImageIO.read(in);
+                if (image == null) {
+                    throw new IOException("Invalid image format for bitmap " + index);
+                }
+                return image;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, executor);
+    }
+
+    private static BufferedImage await(CompletableFuture<BufferedImage> future) throws IOException {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException uncheckedIOException) {
+                throw uncheckedIOException.getCause();
+            }
+            throw new IOException("Failed to decode bitmap: " + e.getCause().getMessage(), e.getCause());
+        }
+    }
+}
@@ -8,12 +8,18 @@ import com.quashbugs.quash.util.StorageProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.channels.Channels;
 import java.util.concurrent.TimeUnit;
 
 import static com.quashbugs.quash.constants.Constants.MAX_RETRIES;
+import static com.quashbugs.quash.constants.Constants.SIGNED_URL_EXPIRY_DAYS;
 
 @Service
 public class GcpStorageService extends AbstractStorageService {
@@ -26,10 +32,12 @@ public class GcpStorageService extends AbstractStorageService {
     public GcpStorageService(BugMediaRepository bugMediaRepository,
                              GifMediaRepository gifMediaRepository,
                              CrashLogRepository crashLogRepository,
-                             ApplicationRepository applicationRepository,
+                             AppMetadataCache appMetadataCache,
                              ChatUploadRepository chatUploadRepository,
-                             StorageProperties storageProperties) {
-        super(bugMediaRepository, gifMediaRepository, crashLogRepository, applicationRepository, chatUploadRepository, storageProperties);
+                             StorageProperties storageProperties,
+                             SignedUrlCache signedUrlCache,
+                             MediaBlobRegistry mediaBlobRegistry) {
+        super(bugMediaRepository, gifMediaRepository, crashLogRepository, appMetadataCache, chatUploadRepository, storageProperties, signedUrlCache, mediaBlobRegistry);
         try {
             String clientEmail = storageProperties.getGcpClientEmail();
             String privateKey = storageProperties.getGcpPrivateKey();
@@ -54,15 +62,22 @@ public class GcpStorageService extends AbstractStorageService {
     }
 
     @Override
-    protected void uploadWithRetries(byte[] content, String objectName, String mimeType) {
+    protected void uploadWithRetries(InputStreamSource content, long contentLength, String objectName, String mimeType) {
+        int partSize = (int) storageProperties.getUploadPartSize();
         for (int attempt = 1; attempt <= MAX_RETRIES; attempt++) {
-            try {
-                BlobInfo blobInfo = BlobInfo.newBuilder(storageProperties.getGcpBucketName(), objectName)
-                        .setContentType(mimeType)
-                        .build();
-                storage.create(blobInfo, content);
+            BlobInfo blobInfo = BlobInfo.newBuilder(storageProperties.getGcpBucketName(), objectName)
+                    .setContentType(mimeType)
+                    .build();
+            try (InputStream in = content.getInputStream()) {
+                if (contentLength <= partSize) {
+                    // Small objects go up in a single request, at most one part is held in memory.
+                    storage.create(blobInfo, in.readAllBytes());
+                } else {
+                    // Resumable upload, streamed in chunks of the configured part size.
+                    storage.createFrom(blobInfo, in, partSize);
+                }
                 return;
-            } catch (StorageException ex) {
+            } catch (StorageException | IOException ex) {
                 logAndMaybeRetry(attempt, ex);
             }
         }
@@ -78,14 +93,28 @@ public class GcpStorageService extends AbstractStorageService {
     }
 
     @Override
-    public String generateSignedUrl(String objectName) {
+    public InputStream openStream(String objectName) throws IOException {
+        Blob blob = storage.get(BlobId.of(storageProperties.getGcpBucketName(), objectName));
+        if (blob == null) {
+            throw new FileNotFoundException("Object not found: " + objectName);
+        }
+        return Channels.newInputStream(blob.reader());
+    }
+
+    @Override
+    protected String signUrl(String objectName) {
         URL signedUrl = storage.signUrl(
                 BlobInfo.newBuilder(storageProperties.getGcpBucketName(), objectName).build(),
-                7,  // 1 hour expiration
+                SIGNED_URL_EXPIRY_DAYS,
                 TimeUnit.DAYS,
                 Storage.SignUrlOption.httpMethod(HttpMethod.GET),
                 Storage.SignUrlOption.withV4Signature()
         );
         return signedUrl.toString();
     }
-}
\ No newline at end of file
+
+    @Override
+    protected String getProviderName() {
+        return "gcp";
+    }
+}
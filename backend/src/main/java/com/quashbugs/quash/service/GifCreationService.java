@@ -2,168 +2,294 @@ package com.quashbugs.quash.service;
 
 import com.github.jaiimageio.impl.plugins.gif.GIFImageWriter;
 import com.github.jaiimageio.impl.plugins.gif.GIFImageWriterSpi;
+import com.quashbugs.quash.dto.miscellaneous.TempFileMultipartDTO;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
-import org.springframework.web.multipart.MultipartFile;
 
 import javax.imageio.*;
 import javax.imageio.metadata.IIOInvalidTreeException;
 import javax.imageio.metadata.IIOMetadata;
 import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.FileImageOutputStream;
 import javax.imageio.stream.ImageOutputStream;
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
+import java.awt.image.IndexColorModel;
 import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.Executor;
+
+/**
+ * Encodes GIFs one frame at a time. Source frames are decoded on the GIF decode executor at most
+ * {@code gif.decode-ahead} frames ahead of the encoder, and the GIF is written to a temporary
+ * file, so a job holds only a few decoded frames regardless of the session length.
+ * <p>
+ * Session recordings mostly change in small regions, so every frame after the first only stores
+ * the rectangle that differs from the previous frame, drawn over it with the "doNotDispose"
+ * disposal method. A frame identical to the previous one is dropped and its delay is added to
+ * the previous frame instead.
+ * <p>
+ * All frames share one {@link SessionPalette} built from up to {@code gif.palette.sample-frames}
+ * frames spread over the session, written once as the global color table, instead of having the
+ * writer reduce every frame to its own palette.
+ */
 @Service
 public class GifCreationService {
 
     private static final Logger logger = LoggerFactory.getLogger(GifCreationService.class);
 
-    public ByteArrayOutputStream createGif(List<MultipartFile> files, int delayTime) throws IOException {
-        logger.info("Creating GIF with {} bitmaps and delay time: {}", files.size(), delayTime);
+    private static final String GIF_FILE_NAME = "generated.gif";
 
-        List<BufferedImage> images = files.parallelStream()
-                .map(file -> {
-                    try {
-                        return ImageIO.read(file.getInputStream());
-                    } catch (IOException e) {
-                        throw new UncheckedIOException(e);
-                    }
-                })
-                .toList();
+    private static final String GIF_MIME_TYPE = "image/gif";
 
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageWriter writer = new GIFImageWriter(new GIFImageWriterSpi());
-        IIOMetadata metadata = getMetadata(writer, delayTime);
+    private static final int MAX_DELAY_TIME = 0xFFFF;
 
-        try (ImageOutputStream output = ImageIO.createImageOutputStream(outputStream)) {
-            writer.setOutput(output);
-            writer.prepareWriteSequence(null);
+    /**
+     * A frame waiting to be written until it is known whether the next frame extends its delay.
+     */
+    private static final class PendingFrame {
+        private final BufferedImage image;
+        private final int left;
+        private final int top;
+        private int delayTime;
 
-            int batchSize = 10;
-            int totalImages = images.size();
-            int processedImages = 0;
+        private PendingFrame(BufferedImage image, int left, int top, int delayTime) {
+            this.image = image;
+            this.left = left;
+            this.top = top;
+            this.delayTime = delayTime;
+        }
+    }
 
-            logger.info("Starting GIF generation from {} images with batch size {}", totalImages, batchSize);
+    private final Executor gifDecodeExecutor;
 
-            while (processedImages < totalImages) {
-                int batchEnd = Math.min(processedImages + batchSize, totalImages);
-                List<BufferedImage> batch = images.subList(processedImages, batchEnd);
+    @Value("${gif.decode-ahead:4}")
+    private int decodeAhead;
 
-                logger.debug("Processing batch of {} images (index {} to {})", batch.size(), processedImages, batchEnd - 1);
+    @Value("${gif.temp-dir:}")
+    private String tempDir;
 
-                for (int i = 0; i < batch.size(); i++) {
-                    BufferedImage img = batch.get(i);
-                    try {
-                        logger.debug("Writing bitmap {} to GIF sequence inside createGif", processedImages + i);
-                        writer.writeToSequence(new javax.imageio.IIOImage(img, null, metadata), null);
-                    } catch (javax.imageio.IIOException e) {
-                        logger.error("An error occurred while processing the GIF generation request for bitmap inside createGif {}: {}", processedImages + i, e.getMessage(), e);
-                        throw new IOException("An error occurred while processing the GIF generation request: " + e.getMessage(), e);
-                    }
-                }
+    @Value("${gif.palette.sample-frames:8}")
+    private int paletteSampleFrames;
 
-                processedImages = batchEnd;
-                logger.debug("Processed {} out of {} images", processedImages, totalImages);
-            }
+    @Value("${gif.palette.dither:false}")
+    private boolean paletteDither;
 
-            writer.endWriteSequence();
-            logger.info("GIF generation completed successfully");
+    @Autowired
+    public GifCreationService(@Qualifier("gifDecodeExecutor") Executor gifDecodeExecutor) {
+        this.gifDecodeExecutor = gifDecodeExecutor;
+    }
+
+    /**
+     * Creates a GIF from the given frames in order. The caller owns the returned file and must
+     * close it once it has been uploaded.
+     */
+    public TempFileMultipartDTO createGif(List<? extends InputStreamSource> frames, int delayTime) throws IOException {
+        logger.info("Creating GIF with {} bitmaps and delay time: {}", frames.size(), delayTime);
 
+        Path gifPath = createTempFile();
+        ImageWriter writer = new GIFImageWriter(new GIFImageWriterSpi());
+        boolean completed = false;
+
+        try {
+            SessionPalette palette = buildPalette(frames);
+            writeFrames(writer, gifPath, frames, palette, delayTime);
+            completed = true;
         } catch (IOException e) {
-            logger.error("An error occurred while generating the GIF inside createGif: {}", e.getMessage(), e);
-            throw new IOException("An error occurred while generating the GIF inside createGif: " + e.getMessage(), e);
+            logger.error("An error occurred while generating the GIF: {}", e.getMessage(), e);
+            throw new IOException("An error occurred while generating the GIF: " + e.getMessage(), e);
         } finally {
             writer.dispose();
-            writer = null;
-            metadata = null;
-            System.gc();
+            if (!completed) {
+                Files.deleteIfExists(gifPath);
+            }
         }
 
-        logger.info("GIF created successfully inside createGif");
-        return outputStream;
+        return new TempFileMultipartDTO(gifPath, GIF_FILE_NAME, GIF_MIME_TYPE);
     }
 
-    public ByteArrayOutputStream createGifFromByteArrays(List<byte[]> imageByteArrays, int delayTime) throws IOException {
-        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-        ImageWriter writer = new GIFImageWriter(new GIFImageWriterSpi());
-        IIOMetadata metadata = getMetadata(writer, delayTime);
+    private SessionPalette buildPalette(List<? extends InputStreamSource> frames) throws IOException {
+        int samples = Math.max(1, Math.min(paletteSampleFrames, frames.size()));
+        List<InputStreamSource> sampled = new ArrayList<>(samples);
+        for (int i = 0; i < samples; i++) {
+            sampled.add(frames.get((int) ((long) i * frames.size() / samples)));
+        }
+        SessionPalette.Histogram histogram = new SessionPalette.Histogram();
+        try (DecodeAheadFrames decoded = new DecodeAheadFrames(sampled, gifDecodeExecutor, decodeAhead)) {
+            while (decoded.hasNext()) {
+                histogram.add(decoded.next());
+            }
+        }
+        return histogram.build(paletteDither);
+    }
 
-        try (ImageOutputStream output = ImageIO.createImageOutputStream(outputStream)) {
+    private void writeFrames(ImageWriter writer, Path gifPath, List<? extends InputStreamSource> frames,
+                             SessionPalette palette, int delayTime) throws IOException {
+        try (ImageOutputStream output = new FileImageOutputStream(gifPath.toFile());
+             DecodeAheadFrames decoded = new DecodeAheadFrames(frames, gifDecodeExecutor, decodeAhead)) {
             writer.setOutput(output);
-            writer.prepareWriteSequence(null);
-
-            int batchSize = 10;
-            int totalImages = imageByteArrays.size();
-            int processedImages = 0;
-
-            logger.info("Starting GIF generation from {} images with batch size {}", totalImages, batchSize);
-
-            while (processedImages < totalImages) {
-                int batchEnd = Math.min(processedImages + batchSize, totalImages);
-                List<byte[]> batch = imageByteArrays.subList(processedImages, batchEnd);
-
-                logger.debug("Processing batch of {} images (index {} to {})", batch.size(), processedImages, batchEnd - 1);
-
-                for (byte[] imageBytes : batch) {
-                    try (InputStream inputStream = new ByteArrayInputStream(imageBytes)) {
-                        BufferedImage image = ImageIO.read(inputStream);
-                        if (image == null) {
-                            String errorMessage = "Invalid image format";
-                            logger.error(errorMessage);
-                            throw new IOException(errorMessage);
-                        }
-                        writer.writeToSequence(new IIOImage(image, null, metadata), null);
-                    } catch (IOException e) {
-                        String errorMessage = "An error occurred while processing the image";
-                        logger.error(errorMessage, e);
-                        throw e;
-                    }
+            writer.prepareWriteSequence(getStreamMetadata(writer, palette));
+
+            int[] previousPixels = null;
+            int previousWidth = 0;
+            int previousHeight = 0;
+            PendingFrame pending = null;
+            int written = 0;
+            for (int index = 0; decoded.hasNext(); index++) {
+                BufferedImage image = decoded.next();
+                int width = image.getWidth();
+                int height = image.getHeight();
+                int[] pixels = image.getRGB(0, 0, width, height, null, 0, width);
+
+                Rectangle dirty = new Rectangle(0, 0, width, height);
+                if (previousPixels != null && width == previousWidth && height == previousHeight) {
+                    dirty = dirtyRectangle(previousPixels, pixels, width, height);
                 }
-
-                processedImages = batchEnd;
-                logger.debug("Processed {} out of {} images", processedImages, totalImages);
+                if (dirty == null) {
+                    logger.debug("Bitmap {} is identical to the previous one, extending its delay", index);
+                    pending.delayTime = Math.min(MAX_DELAY_TIME, pending.delayTime + delayTime);
+                    continue;
+                }
+                if (pending != null) {
+                    writeFrame(writer, pending, written++ == 0);
+                }
+                pending = new PendingFrame(palette.map(pixels, width, dirty), dirty.x, dirty.y, delayTime);
+                previousPixels = pixels;
+                previousWidth = width;
+                previousHeight = height;
+            }
+            if (pending != null) {
+                writeFrame(writer, pending, written++ == 0);
             }
 
             writer.endWriteSequence();
-            logger.info("GIF generation completed successfully");
-        } catch (IOException e) {
-            String errorMessage = "An error occurred while generating the GIF";
-            logger.error(errorMessage, e);
-            throw e;
-        } finally {
-            writer.dispose();
-            writer = null;
-            metadata = null;
-            System.gc();
+            logger.info("GIF generation completed successfully with {} frames out of {} bitmaps", written, frames.size());
+        }
+    }
+
+    private void writeFrame(ImageWriter writer, PendingFrame frame, boolean first) throws IOException {
+        IIOMetadata metadata = getMetadata(writer, frame.image, frame.delayTime, frame.left, frame.top, first);
+        writer.writeToSequence(new IIOImage(frame.image, null, metadata), null);
+    }
+
+    /**
+     * Returns the smallest rectangle containing every pixel that differs between the two frames,
+     * or null if they are identical.
+     */
+    private static Rectangle dirtyRectangle(int[] previous, int[] current, int width, int height) {
+        int top = -1;
+        for (int y = 0; y < height && top < 0; y++) {
+            if (!Arrays.equals(previous, y * width, (y + 1) * width, current, y * width, (y + 1) * width)) {
+                top = y;
+            }
+        }
+        if (top < 0) {
+            return null;
+        }
+        int bottom = top;
+        for (int y = height - 1; y > top; y--) {
+            if (!Arrays.equals(previous, y * width, (y + 1) * width, current, y * width, (y + 1) * width)) {
+                bottom = y;
+                break;
+            }
+        }
+        int left = width;
+        int right = -1;
+        for (int y = top; y <= bottom; y++) {
+            int row = y * width;
+            for (int x = 0; x < left; x++) {
+                if (previous[row + x] != current[row + x]) {
+                    left = x;
+                    break;
+                }
+            }
+            for (int x = width - 1; x > right; x--) {
+                if (previous[row + x] != current[row + x]) {
+                    right = x;
+                    break;
+                }
+            }
         }
+        return new Rectangle(left, top, right - left + 1, bottom - top + 1);
+    }
 
-        return outputStream;
+    private Path createTempFile() throws IOException {
+        if (tempDir == null || tempDir.isBlank()) {
+            return Files.createTempFile("quash-gif-", ".gif");
+        }
+        Path directory = Files.createDirectories(Path.of(tempDir));
+        return Files.createTempFile(directory, "quash-gif-", ".gif");
     }
 
-    private IIOMetadata getMetadata(ImageWriter writer, int delayTime) throws IIOInvalidTreeException {
+    /**
+     * Writes the session palette as the global color table, so frames using it need no local one.
+     */
+    private IIOMetadata getStreamMetadata(ImageWriter writer, SessionPalette palette) throws IIOInvalidTreeException {
+        IIOMetadata metadata = writer.getDefaultStreamMetadata(writer.getDefaultWriteParam());
+        String metaFormatName = metadata.getNativeMetadataFormatName();
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metaFormatName);
+
+        IndexColorModel colorModel = palette.getColorModel();
+        int tableSize = Math.max(2, Integer.highestOneBit(colorModel.getMapSize() - 1) << 1);
+        IIOMetadataNode globalColorTableNode = getNode(root, "GlobalColorTable");
+        globalColorTableNode.setAttribute("sizeOfGlobalColorTable", Integer.toString(tableSize));
+        globalColorTableNode.setAttribute("backgroundColorIndex", "0");
+        globalColorTableNode.setAttribute("sortFlag", "FALSE");
+        // Padded with the first color like the writer pads a frame's palette, so frame palettes
+        // compare equal to the global color table and no local color table is written.
+        for (int i = 0; i < tableSize; i++) {
+            int rgb = colorModel.getRGB(i < colorModel.getMapSize() ? i : 0);
+            IIOMetadataNode entry = new IIOMetadataNode("ColorTableEntry");
+            entry.setAttribute("index", Integer.toString(i));
+            entry.setAttribute("red", Integer.toString((rgb >> 16) & 0xFF));
+            entry.setAttribute("green", Integer.toString((rgb >> 8) & 0xFF));
+            entry.setAttribute("blue", Integer.toString(rgb & 0xFF));
+            globalColorTableNode.appendChild(entry);
+        }
+
+        metadata.setFromTree(metaFormatName, root);
+        return metadata;
+    }
+
+    private IIOMetadata getMetadata(ImageWriter writer, BufferedImage image, int delayTime, int left, int top, boolean first) throws IIOInvalidTreeException {
         ImageWriteParam writeParam = writer.getDefaultWriteParam();
-        ImageTypeSpecifier imageTypeSpecifier = ImageTypeSpecifier.createFromBufferedImageType(BufferedImage.TYPE_INT_RGB);
+        ImageTypeSpecifier imageTypeSpecifier = ImageTypeSpecifier.createFromRenderedImage(image);
 
         IIOMetadata metadata = writer.getDefaultImageMetadata(imageTypeSpecifier, writeParam);
         String metaFormatName = metadata.getNativeMetadataFormatName();
         IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(metaFormatName);
 
+        // Left out so the writer compares the frame palette with the global color table.
+        root.removeChild(getNode(root, "LocalColorTable"));
+
         IIOMetadataNode graphicsControlExtensionNode = getNode(root, "GraphicControlExtension");
-        graphicsControlExtensionNode.setAttribute("disposalMethod", "none");
+        graphicsControlExtensionNode.setAttribute("disposalMethod", "doNotDispose");
         graphicsControlExtensionNode.setAttribute("userInputFlag", "FALSE");
         graphicsControlExtensionNode.setAttribute("transparentColorFlag", "FALSE");
         graphicsControlExtensionNode.setAttribute("delayTime", Integer.toString(delayTime));
         graphicsControlExtensionNode.setAttribute("transparentColorIndex", "0");
 
-        IIOMetadataNode appExtensionsNode = getNode(root, "ApplicationExtensions");
-        IIOMetadataNode child = new IIOMetadataNode("ApplicationExtension");
-        child.setAttribute("applicationID", "NETSCAPE");
-        child.setAttribute("authenticationCode", "2.0");
-        child.setUserObject(new byte[]{0x1, 0x0, 0x0});
-        appExtensionsNode.appendChild(child);
+        IIOMetadataNode imageDescriptorNode = getNode(root, "ImageDescriptor");
+        imageDescriptorNode.setAttribute("imageLeftPosition", Integer.toString(left));
+        imageDescriptorNode.setAttribute("imageTopPosition", Integer.toString(top));
+
+        if (first) {
+            IIOMetadataNode appExtensionsNode = getNode(root, "ApplicationExtensions");
+            IIOMetadataNode child = new IIOMetadataNode("ApplicationExtension");
+            child.setAttribute("applicationID", "NETSCAPE");
+            child.setAttribute("authenticationCode", "2.0");
+            child.setUserObject(new byte[]{0x1, 0x0, 0x0});
+            appExtensionsNode.appendChild(child);
+        }
 
         metadata.setFromTree(metaFormatName, root);
         return metadata;
@@ -180,4 +306,4 @@ public class GifCreationService {
         rootNode.appendChild(node);
         return node;
     }
-}
\ No newline at end of file
+}
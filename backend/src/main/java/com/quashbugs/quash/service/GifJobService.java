@@ -0,0 +1,407 @@
+package com.quashbugs.quash.service;
+
+import com.quashbugs.quash.exceptions.GifQueueFullException;
+import com.quashbugs.quash.model.BugMedia;
+import com.quashbugs.quash.model.GifJob;
+import com.quashbugs.quash.model.GifStatus;
+import com.quashbugs.quash.model.Report;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Queue of GIF generation jobs persisted in the {@code gif-jobs} collection. Jobs are claimed
+ * with a lease by the workers of {@code gifJobExecutor}, which is renewed while the job runs; a
+ * job whose worker died is picked up again once its lease expires, up to
+ * {@code gif.jobs.max-attempts} times. A failed attempt is retried after a backoff that doubles
+ * from {@code gif.jobs.retry-backoff-seconds}. New jobs are refused once
+ * {@code gif.jobs.max-queued} jobs are waiting.
+ * <p>
+ * With {@code gif.spill.enabled}, received bitmaps are kept in a local spill directory rather
+ * than uploaded, and only this host claims the job. The bitmaps are uploaded to cloud storage
+ * only if rendering fails, so any instance can retry the job. Spilled jobs still waiting for
+ * their host after {@code gif.spill.orphan-after-seconds} are failed by the other instances,
+ * since their bitmaps went with the host.
+ */
+@Service
+@Lazy(false)
+public class GifJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GifJobService.class);
+
+    private static final List<GifStatus> ACTIVE_STATUSES = List.of(GifStatus.QUEUED, GifStatus.PROCESSING);
+
+    private final MongoOperations mongoOperations;
+
+    private final ReportsService reportsService;
+
+    private final ThreadPoolTaskExecutor gifJobExecutor;
+
+    private final GifSpillService gifSpillService;
+
+    private final String workerId;
+
+    private final String spillHost;
+
+    private final Set<String> runningJobIds = ConcurrentHashMap.newKeySet();
+
+    @Value("${gif.jobs.max-queued:200}")
+    private long maxQueued;
+
+    @Value("${gif.jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${gif.jobs.lease-seconds:600}")
+    private long leaseSeconds;
+
+    @Value("${gif.jobs.retry-backoff-seconds:30}")
+    private long retryBackoffSeconds;
+
+    @Value("${gif.spill.orphan-after-seconds:3600}")
+    private long spillOrphanAfterSeconds;
+
+    @Autowired
+    public GifJobService(MongoOperations mongoOperations,
+                         ReportsService reportsService,
+                         @Qualifier("gifJobExecutor") ThreadPoolTaskExecutor gifJobExecutor,
+                         GifSpillService gifSpillService) {
+        this.mongoOperations = mongoOperations;
+        this.reportsService = reportsService;
+        this.gifJobExecutor = gifJobExecutor;
+        this.gifSpillService = gifSpillService;
+        this.spillHost = hostName();
+        this.workerId = spillHost + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Queues a GIF job for the report, or returns the job already queued or running for it.
+     *
+     * @throws GifQueueFullException if too many jobs are waiting
+     */
+    public GifJob enqueue(Report report) throws GifQueueFullException {
+        Optional<GifJob> active = findActiveJob(report.getId());
+        if (active.isPresent()) {
+            return active.get();
+        }
+        ensureCapacity();
+        return insert(report, GifJob.builder());
+    }
+
+    /**
+     * Queues a GIF job for the report from the given bitmaps, or returns the job already queued or
+     * running for it, in which case the bitmaps are ignored when they are spilled.
+     *
+     * @throws GifQueueFullException if too many jobs are waiting
+     */
+    public GifJob enqueue(Report report, List<MultipartFile> files) throws Exception, GifQueueFullException {
+        if (!gifSpillService.isEnabled()) {
+            reportsService.attachGifBitmaps(report, files);
+            return enqueue(report);
+        }
+        Optional<GifJob> active = findActiveJob(report.getId());
+        if (active.isPresent()) {
+            return active.get();
+        }
+        ensureCapacity();
+
+        Path directory = gifSpillService.spill(report.getId(), files);
+        try {
+            GifJob job = insert(report, GifJob.builder()
+                    .spillHost(spillHost)
+                    .spillDir(directory.toString())
+                    .spillContentTypes(files.stream().map(MultipartFile::getContentType).toList()));
+            if (!directory.toString().equals(job.getSpillDir())) {
+                // A concurrent request queued the job first; its bitmaps are used instead.
+                gifSpillService.delete(directory);
+            }
+            return job;
+        } catch (RuntimeException e) {
+            gifSpillService.delete(directory);
+            throw e;
+        }
+    }
+
+    /**
+     * Inserts the job, or returns the active job of the report if a concurrent request queued one
+     * first.
+     */
+    private GifJob insert(Report report, GifJob.GifJobBuilder builder) {
+        Date now = new Date();
+        GifJob job;
+        try {
+            job = mongoOperations.insert(builder
+                    .reportId(report.getId())
+                    .activeReportId(report.getId())
+                    .status(GifStatus.QUEUED)
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .build());
+        } catch (DuplicateKeyException e) {
+            return findActiveJob(report.getId()).orElseThrow(() -> e);
+        }
+        reportsService.updateGifStatus(report, GifStatus.QUEUED);
+        LOGGER.info("Queued GIF job {} for report ID: {}", job.getId(), report.getId());
+        dispatch();
+        return job;
+    }
+
+    /**
+     * Fails fast before any work is done for a request that would be refused by {@link #enqueue}.
+     */
+    public void ensureCapacity() throws GifQueueFullException {
+        long queued = mongoOperations.count(Query.query(Criteria.where("status").is(GifStatus.QUEUED)), GifJob.class);
+        if (queued >= maxQueued) {
+            throw new GifQueueFullException("Too many GIF jobs are waiting, try again later.");
+        }
+    }
+
+    public Optional<GifJob> findLatestJob(String reportId) {
+        Query query = Query.query(Criteria.where("reportId").is(reportId))
+                .with(Sort.by(Sort.Order.desc("createdAt")))
+                .limit(1);
+        return Optional.ofNullable(mongoOperations.findOne(query, GifJob.class));
+    }
+
+    private Optional<GifJob> findActiveJob(String reportId) {
+        Query query = Query.query(Criteria.where("reportId").is(reportId).and("status").in(ACTIVE_STATUSES));
+        return Optional.ofNullable(mongoOperations.findOne(query, GifJob.class));
+    }
+
+    /**
+     * Starts a worker for every claimable job while workers are free. Also runs periodically to
+     * pick up jobs left behind by a restart or an expired lease.
+     */
+    @Scheduled(fixedDelayString = "${gif.jobs.poll-interval-ms:10000}")
+    public void dispatch() {
+        int idleWorkers = gifJobExecutor.getMaxPoolSize() - gifJobExecutor.getActiveCount();
+        if (idleWorkers <= 0) {
+            return;
+        }
+        long claimable = mongoOperations.count(claimableQuery(new Date()), GifJob.class);
+        for (long i = 0; i < Math.min(idleWorkers, claimable); i++) {
+            try {
+                gifJobExecutor.execute(this::drainQueue);
+            } catch (TaskRejectedException e) {
+                return;
+            }
+        }
+    }
+
+    private void drainQueue() {
+        GifJob job;
+        while ((job = claimNext()) != null) {
+            runningJobIds.add(job.getId());
+            try {
+                process(job);
+            } finally {
+                runningJobIds.remove(job.getId());
+            }
+        }
+    }
+
+    /**
+     * Extends the leases of the jobs running on this instance, so a long render is not claimed
+     * again by another worker while it is still running.
+     */
+    @Scheduled(fixedDelayString = "${gif.jobs.lease-renew-interval-ms:60000}")
+    public void renewLeases() {
+        if (runningJobIds.isEmpty()) {
+            return;
+        }
+        Date now = new Date();
+        Query query = Query.query(Criteria.where("id").in(runningJobIds)
+                .and("workerId").is(workerId)
+                .and("status").is(GifStatus.PROCESSING));
+        Update update = new Update().set("leaseExpiresAt", new Date(now.getTime() + leaseSeconds * 1000));
+        mongoOperations.updateMulti(query, update, GifJob.class);
+    }
+
+    private GifJob claimNext() {
+        Date now = new Date();
+        Query query = claimableQuery(now).with(Sort.by(Sort.Order.asc("createdAt")));
+        Update update = new Update()
+                .set("status", GifStatus.PROCESSING)
+                .set("workerId", workerId)
+                .set("leaseExpiresAt", new Date(now.getTime() + leaseSeconds * 1000))
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+        return mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), GifJob.class);
+    }
+
+    private Query claimableQuery(Date now) {
+        Criteria reachable = new Criteria().orOperator(
+                Criteria.where("spillHost").is(null),
+                Criteria.where("spillHost").is(spillHost));
+        return Query.query(new Criteria().andOperator(claimableCriteria(now), reachable));
+    }
+
+    private static Criteria claimableCriteria(Date now) {
+        return new Criteria().orOperator(
+                Criteria.where("status").is(GifStatus.QUEUED).and("notBefore").not().gt(now),
+                Criteria.where("status").is(GifStatus.PROCESSING).and("leaseExpiresAt").lt(now));
+    }
+
+    /**
+     * Fails spilled jobs whose host has not picked them up within
+     * {@code gif.spill.orphan-after-seconds}. Their bitmaps only exist on that host, so no other
+     * instance could render them.
+     */
+    @Scheduled(fixedDelayString = "${gif.spill.orphan-check-interval-ms:60000}")
+    public void failOrphanedSpillJobs() {
+        Date now = new Date();
+        Query query = Query.query(new Criteria().andOperator(
+                claimableCriteria(now),
+                Criteria.where("spillHost").nin(null, spillHost),
+                Criteria.where("createdAt").lt(new Date(now.getTime() - spillOrphanAfterSeconds * 1000))));
+        for (GifJob job : mongoOperations.find(query, GifJob.class)) {
+            String errorMessage = "Spill host " + job.getSpillHost() + " gone; bitmaps lost";
+            Query unclaimed = Query.query(new Criteria().andOperator(
+                    Criteria.where("_id").is(job.getId()), claimableCriteria(now)));
+            Update update = new Update()
+                    .set("status", GifStatus.FAILED)
+                    .set("errorMessage", errorMessage)
+                    .set("updatedAt", now)
+                    .set("completedAt", now)
+                    .unset("activeReportId")
+                    .unset("leaseExpiresAt")
+                    .unset("workerId");
+            if (mongoOperations.updateFirst(unclaimed, update, GifJob.class).getModifiedCount() == 0) {
+                continue;
+            }
+            LOGGER.warn("Failed GIF job {} for report ID: {}: {}", job.getId(), job.getReportId(), errorMessage);
+            reportsService.findReportById(job.getReportId())
+                    .ifPresent(report -> reportsService.updateGifStatus(report, GifStatus.FAILED));
+        }
+    }
+
+    private void process(GifJob job) {
+        Optional<Report> reportOpt = reportsService.findReportById(job.getReportId());
+        if (reportOpt.isEmpty()) {
+            finish(job, GifStatus.FAILED, null, "Report not found");
+            return;
+        }
+        Report report = reportOpt.get();
+        if (job.getSpillDir() != null && !gifSpillService.exists(Path.of(job.getSpillDir()))) {
+            // Retrying cannot bring back bitmaps lost with the spill directory.
+            finish(job, GifStatus.FAILED, null, "Spilled bitmaps lost from " + job.getSpillDir());
+            reportsService.updateGifStatus(report, GifStatus.FAILED);
+            return;
+        }
+        if (job.getAttempts() > maxAttempts) {
+            if (job.getSpillDir() != null) {
+                uploadSpilledBitmaps(job, report);
+            }
+            finish(job, GifStatus.FAILED, null, "Gave up after " + maxAttempts + " attempts");
+            reportsService.updateGifStatus(report, GifStatus.FAILED);
+            return;
+        }
+        try {
+            reportsService.updateGifStatus(report, GifStatus.PROCESSING);
+            LOGGER.info("Running GIF job {} for report ID: {} (attempt {})", job.getId(), report.getId(), job.getAttempts());
+            BugMedia media = job.getSpillDir() != null
+                    ? renderSpilled(job, report)
+                    : reportsService.renderSessionMedia(report);
+            finish(job, GifStatus.COMPLETED, media.getMediaRef(), null);
+        } catch (Exception e) {
+            LOGGER.error("GIF job {} failed for report ID: {}", job.getId(), report.getId(), e);
+            if (job.getSpillDir() != null) {
+                uploadSpilledBitmaps(job, report);
+            }
+            if (job.getAttempts() < maxAttempts) {
+                finish(job, GifStatus.QUEUED, null, e.getMessage());
+                reportsService.updateGifStatus(report, GifStatus.QUEUED);
+            } else {
+                finish(job, GifStatus.FAILED, null, e.getMessage());
+                reportsService.updateGifStatus(report, GifStatus.FAILED);
+            }
+        }
+    }
+
+    private BugMedia renderSpilled(GifJob job, Report report) throws Exception {
+        Path directory = Path.of(job.getSpillDir());
+        if (!spillHost.equals(job.getSpillHost()) || !gifSpillService.exists(directory)) {
+            throw new IllegalStateException("Bitmaps spilled on " + job.getSpillHost() + " are not available on " + spillHost);
+        }
+        List<InputStreamSource> frames = gifSpillService.getFrames(directory, job.getSpillContentTypes().size());
+        BugMedia media = reportsService.renderSessionMedia(report, frames);
+        gifSpillService.delete(directory);
+        return media;
+    }
+
+    /**
+     * Moves the spilled bitmaps of a failed job to cloud storage, so a retry can run anywhere.
+     */
+    private void uploadSpilledBitmaps(GifJob job, Report report) {
+        Path directory = Path.of(job.getSpillDir());
+        if (!spillHost.equals(job.getSpillHost()) || !gifSpillService.exists(directory)) {
+            return;
+        }
+        try {
+            reportsService.attachGifBitmaps(report, gifSpillService.getFiles(directory, job.getSpillContentTypes()));
+            Update update = new Update().unset("spillHost").unset("spillDir").unset("spillContentTypes");
+            mongoOperations.updateFirst(leaseQuery(job), update, GifJob.class);
+            gifSpillService.delete(directory);
+            LOGGER.info("Uploaded spilled bitmaps of GIF job {} for report ID: {}", job.getId(), report.getId());
+        } catch (Exception e) {
+            LOGGER.error("Error uploading spilled bitmaps of GIF job {}: {}", job.getId(), e.getMessage(), e);
+        }
+    }
+
+    private void finish(GifJob job, GifStatus status, String mediaRef, String errorMessage) {
+        Date now = new Date();
+        Update update = new Update()
+                .set("status", status)
+                .set("mediaRef", mediaRef)
+                .set("errorMessage", errorMessage)
+                .set("updatedAt", now)
+                .unset("leaseExpiresAt")
+                .unset("workerId");
+        if (status == GifStatus.QUEUED) {
+            long backoffSeconds = retryBackoffSeconds << Math.min(Math.max(job.getAttempts() - 1, 0), 10);
+            update.set("notBefore", new Date(now.getTime() + backoffSeconds * 1000));
+        } else {
+            update.set("completedAt", now).unset("activeReportId").unset("notBefore");
+        }
+        mongoOperations.updateFirst(leaseQuery(job), update, GifJob.class);
+    }
+
+    /**
+     * Matches the job only while this worker holds its lease.
+     */
+    private Query leaseQuery(GifJob job) {
+        return Query.query(Criteria.where("id").is(job.getId()).and("workerId").is(workerId).and("attempts").is(job.getAttempts()));
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
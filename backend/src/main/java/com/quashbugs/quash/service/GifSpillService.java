@@ -0,0 +1,102 @@
+package com.quashbugs.quash.service;
+
+import com.quashbugs.quash.dto.miscellaneous.TempFileMultipartDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the bitmaps of a GIF job in a local spill directory instead of cloud storage. A job's
+ * bitmaps are written to their own directory as {@code 00000}, {@code 00001}, ... in upload
+ * order, and the directory is removed once the job no longer needs them.
+ */
+@Service
+public class GifSpillService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GifSpillService.class);
+
+    private static final String DEFAULT_CONTENT_TYPE = "image/png";
+
+    @Value("${gif.spill.enabled:false}")
+    private boolean enabled;
+
+    @Value("${gif.spill.dir:}")
+    private String spillDir;
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Writes the bitmaps of a report to a new spill directory and returns its path.
+     */
+    public Path spill(String reportId, List<MultipartFile> files) throws IOException {
+        Path directory = Files.createTempDirectory(spillRoot(), reportId + "-");
+        try {
+            for (int i = 0; i < files.size(); i++) {
+                files.get(i).transferTo(frameFile(directory, i));
+            }
+        } catch (IOException e) {
+            delete(directory);
+            throw e;
+        }
+        LOGGER.info("Spilled {} bitmaps for report ID: {} to {}", files.size(), reportId, directory);
+        return directory;
+    }
+
+    public boolean exists(Path directory) {
+        return Files.isDirectory(directory);
+    }
+
+    public List<InputStreamSource> getFrames(Path directory, int count) {
+        List<InputStreamSource> frames = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            frames.add(new FileSystemResource(frameFile(directory, i)));
+        }
+        return frames;
+    }
+
+    /**
+     * Returns the spilled bitmaps as multipart files with their original content types, so they
+     * can be uploaded like bitmaps received in a request.
+     */
+    public List<MultipartFile> getFiles(Path directory, List<String> contentTypes) {
+        List<MultipartFile> files = new ArrayList<>(contentTypes.size());
+        for (int i = 0; i < contentTypes.size(); i++) {
+            String contentType = contentTypes.get(i) != null ? contentTypes.get(i) : DEFAULT_CONTENT_TYPE;
+            Path frame = frameFile(directory, i);
+            files.add(new TempFileMultipartDTO(frame, frame.getFileName().toString(), contentType));
+        }
+        return files;
+    }
+
+    public void delete(Path directory) {
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            LOGGER.error("Error deleting spill directory {}: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    private Path spillRoot() throws IOException {
+        Path root = spillDir == null || spillDir.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "quash-gif-spill")
+                : Path.of(spillDir);
+        return Files.createDirectories(root);
+    }
+
+    private static Path frameFile(Path directory, int index) {
+        return directory.resolve(String.format("%05d", index));
+    }
+}
@@ -6,7 +6,6 @@ import com.quashbugs.quash.model.Integration;
 import com.quashbugs.quash.model.Organisation;
 import com.quashbugs.quash.model.TeamMember;
 import com.quashbugs.quash.model.User;
-import com.quashbugs.quash.repo.ApplicationRepository;
 import com.quashbugs.quash.repo.IntegrationRepository;
 import com.quashbugs.quash.repo.ReportRepository;
 import com.quashbugs.quash.repo.TeamMemberRepository;
@@ -48,7 +47,7 @@ public class GithubIntegrationService {
 
     private final ReportRepository reportRepository;
 
-    private final ApplicationRepository applicationRepository;
+    private final AppMetadataCache appMetadataCache;
 
     private final IntegrationService integrationService;
 
@@ -56,12 +55,12 @@ public class GithubIntegrationService {
     public GithubIntegrationService(TeamMemberRepository teamMemberRepository,
                                     IntegrationRepository integrationRepository,
                                     ReportRepository reportRepository,
-                                    ApplicationRepository applicationRepository,
+                                    AppMetadataCache appMetadataCache,
                                     IntegrationService integrationService) {
         this.teamMemberRepository = teamMemberRepository;
         this.integrationRepository = integrationRepository;
         this.reportRepository = reportRepository;
-        this.applicationRepository = applicationRepository;
+        this.appMetadataCache = appMetadataCache;
         this.integrationService = integrationService;
     }
 
@@ -151,7 +150,7 @@ public class GithubIntegrationService {
 
         for (var issue : requestBody.getIssues()) {
             reportRepository.findById(issue).ifPresent(report -> {
-                var integrationKeyMap = applicationRepository.findById(report.getAppId())
+                var integrationKeyMap = appMetadataCache.get(report.getAppId())
                         .map(app -> app.getIntegrationKeyMap().get("GITHUB"))
                         .orElseThrow(() -> new IllegalArgumentException("GITHUB integration keys not properly configured for application."));
 
@@ -0,0 +1,335 @@
+package com.quashbugs.quash.service;
+
+import com.quashbugs.quash.dto.request.ReportRequestDTO;
+import com.quashbugs.quash.exceptions.IngestQueueFullException;
+import com.quashbugs.quash.exceptions.ReportNotFoundException;
+import com.quashbugs.quash.model.IngestJob;
+import com.quashbugs.quash.model.IngestStatus;
+import com.quashbugs.quash.model.Organisation;
+import com.quashbugs.quash.model.Report;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Asynchronous report ingest. A received report is reserved right away, its files are spooled
+ * to local disk and an ingest job in the {@code ingest-jobs} collection uploads them later, so
+ * the client gets the report ID without waiting for any upload.
+ * <p>
+ * Jobs are claimed with a lease by the workers of {@code ingestJobExecutor} and retried up to
+ * {@code report.ingest.max-attempts} times, so every job runs at least once;
+ * {@link ReportsService#completeBugReport} skips the parts a previous attempt already attached.
+ * Only the host that spooled a job claims it, since its files are there. Jobs still waiting for
+ * their host after {@code report.ingest.orphan-after-seconds} are failed by the other instances,
+ * since their files went with the host. A request carrying an idempotency key already seen for the organisation
+ * returns the existing job instead of creating another report.
+ */
+@Service
+@Lazy(false)
+public class IngestJobService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestJobService.class);
+
+    private final MongoOperations mongoOperations;
+
+    private final ReportsService reportsService;
+
+    private final ThreadPoolTaskExecutor ingestJobExecutor;
+
+    private final IngestSpoolService ingestSpoolService;
+
+    private final String workerId;
+
+    private final String spoolHost;
+
+    @Value("${report.ingest.max-queued:1000}")
+    private long maxQueued;
+
+    @Value("${report.ingest.max-attempts:5}")
+    private int maxAttempts;
+
+    @Value("${report.ingest.lease-seconds:300}")
+    private long leaseSeconds;
+
+    @Value("${report.ingest.orphan-after-seconds:3600}")
+    private long orphanAfterSeconds;
+
+    @Autowired
+    public IngestJobService(MongoOperations mongoOperations,
+                            ReportsService reportsService,
+                            @Qualifier("ingestJobExecutor") ThreadPoolTaskExecutor ingestJobExecutor,
+                            IngestSpoolService ingestSpoolService) {
+        this.mongoOperations = mongoOperations;
+        this.reportsService = reportsService;
+        this.ingestJobExecutor = ingestJobExecutor;
+        this.ingestSpoolService = ingestSpoolService;
+        this.spoolHost = hostName();
+        this.workerId = spoolHost + ":" + UUID.randomUUID();
+    }
+
+    /**
+     * Reserves the report, spools its files and queues the job that completes it. Returns the
+     * existing job if the organisation already sent a report with the same idempotency key.
+     *
+     * @throws IngestQueueFullException if too many jobs are waiting
+     */
+    public IngestJob enqueue(ReportRequestDTO request, Organisation organisation, String idempotencyKey)
+            throws Exception, IngestQueueFullException {
+        String scopedKey = idempotencyKey != null && !idempotencyKey.isBlank()
+                ? organisation.getId() + ":" + idempotencyKey
+                : null;
+        if (scopedKey != null) {
+            Optional<IngestJob> existing = findByIdempotencyKey(scopedKey);
+            if (existing.isPresent()) {
+                return existing.get();
+            }
+        }
+        ensureCapacity();
+
+        Path directory = ingestSpoolService.spool(request.getMediaFiles(), request.getCrashLog());
+        Report report = null;
+        try {
+            report = reportsService.reserveBugReport(request, organisation);
+            Date now = new Date();
+            List<MultipartFile> mediaFiles = request.getMediaFiles() != null ? request.getMediaFiles() : List.of();
+            MultipartFile crashLog = request.getCrashLog();
+            IngestJob job = mongoOperations.insert(IngestJob.builder()
+                    .idempotencyKey(scopedKey)
+                    .reportId(report.getId())
+                    .orgId(organisation.getId())
+                    .status(IngestStatus.QUEUED)
+                    .createdAt(now)
+                    .updatedAt(now)
+                    .spoolHost(spoolHost)
+                    .spoolDir(directory.toString())
+                    .mediaFileNames(mediaFiles.stream().map(MultipartFile::getOriginalFilename).toList())
+                    .mediaContentTypes(mediaFiles.stream().map(MultipartFile::getContentType).toList())
+                    .crashLogFileName(crashLog != null ? crashLog.getOriginalFilename() : null)
+                    .crashLogContentType(crashLog != null ? crashLog.getContentType() : null)
+                    .deviceMetadata(request.getDeviceMetadata())
+                    .build());
+            LOGGER.info("Queued ingest job {} for report ID: {}", job.getId(), report.getId());
+            dispatch();
+            return job;
+        } catch (DuplicateKeyException e) {
+            // A concurrent retry of the same request won the idempotency key.
+            discard(directory, report);
+            return findByIdempotencyKey(scopedKey).orElseThrow(() -> e);
+        } catch (Exception e) {
+            discard(directory, report);
+            throw e;
+        }
+    }
+
+    /**
+     * Fails fast before any work is done for a request that would be refused by {@link #enqueue}.
+     */
+    public void ensureCapacity() throws IngestQueueFullException {
+        long queued = mongoOperations.count(Query.query(Criteria.where("status").is(IngestStatus.QUEUED)), IngestJob.class);
+        if (queued >= maxQueued) {
+            throw new IngestQueueFullException("Too many reports are waiting to be processed, try again later.");
+        }
+    }
+
+    public Optional<IngestJob> findJob(String jobId) {
+        return Optional.ofNullable(mongoOperations.findById(jobId, IngestJob.class));
+    }
+
+    public Optional<IngestJob> findLatestJob(String reportId) {
+        Query query = Query.query(Criteria.where("reportId").is(reportId))
+                .with(Sort.by(Sort.Order.desc("createdAt")))
+                .limit(1);
+        return Optional.ofNullable(mongoOperations.findOne(query, IngestJob.class));
+    }
+
+    private Optional<IngestJob> findByIdempotencyKey(String scopedKey) {
+        return Optional.ofNullable(mongoOperations.findOne(
+                Query.query(Criteria.where("idempotencyKey").is(scopedKey)), IngestJob.class));
+    }
+
+    private void discard(Path directory, Report report) {
+        ingestSpoolService.delete(directory);
+        if (report != null) {
+            try {
+                reportsService.deleteReport(report.getId());
+            } catch (Exception | ReportNotFoundException e) {
+                LOGGER.error("Error discarding reserved report ID: {}", report.getId(), e);
+            }
+        }
+    }
+
+    /**
+     * Starts a worker for every claimable job while workers are free. Also runs periodically to
+     * pick up jobs left behind by a restart or an expired lease.
+     */
+    @Scheduled(fixedDelayString = "${report.ingest.poll-interval-ms:5000}")
+    public void dispatch() {
+        int idleWorkers = ingestJobExecutor.getMaxPoolSize() - ingestJobExecutor.getActiveCount();
+        if (idleWorkers <= 0) {
+            return;
+        }
+        long claimable = mongoOperations.count(claimableQuery(new Date()), IngestJob.class);
+        for (long i = 0; i < Math.min(idleWorkers, claimable); i++) {
+            try {
+                ingestJobExecutor.execute(this::drainQueue);
+            } catch (TaskRejectedException e) {
+                return;
+            }
+        }
+    }
+
+    private void drainQueue() {
+        IngestJob job;
+        while ((job = claimNext()) != null) {
+            process(job);
+        }
+    }
+
+    private IngestJob claimNext() {
+        Date now = new Date();
+        Query query = claimableQuery(now).with(Sort.by(Sort.Order.asc("createdAt")));
+        Update update = new Update()
+                .set("status", IngestStatus.PROCESSING)
+                .set("workerId", workerId)
+                .set("leaseExpiresAt", new Date(now.getTime() + leaseSeconds * 1000))
+                .set("updatedAt", now)
+                .inc("attempts", 1);
+        return mongoOperations.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), IngestJob.class);
+    }
+
+    private Query claimableQuery(Date now) {
+        return Query.query(new Criteria().andOperator(claimableCriteria(now), Criteria.where("spoolHost").is(spoolHost)));
+    }
+
+    private static Criteria claimableCriteria(Date now) {
+        return new Criteria().orOperator(
+                Criteria.where("status").is(IngestStatus.QUEUED),
+                Criteria.where("status").is(IngestStatus.PROCESSING).and("leaseExpiresAt").lt(now));
+    }
+
+    /**
+     * Fails jobs whose spool host has not picked them up within
+     * {@code report.ingest.orphan-after-seconds}. Their files only exist on that host, so no
+     * other instance could complete them.
+     */
+    @Scheduled(fixedDelayString = "${report.ingest.orphan-check-interval-ms:60000}")
+    public void failOrphanedJobs() {
+        Date now = new Date();
+        Query query = Query.query(new Criteria().andOperator(
+                claimableCriteria(now),
+                Criteria.where("spoolHost").ne(spoolHost),
+                Criteria.where("createdAt").lt(new Date(now.getTime() - orphanAfterSeconds * 1000))));
+        for (IngestJob job : mongoOperations.find(query, IngestJob.class)) {
+            String errorMessage = "Spool host " + job.getSpoolHost() + " gone; files lost";
+            Query unclaimed = Query.query(new Criteria().andOperator(
+                    Criteria.where("_id").is(job.getId()), claimableCriteria(now)));
+            Update update = new Update()
+                    .set("status", IngestStatus.FAILED)
+                    .set("errorMessage", errorMessage)
+                    .set("updatedAt", now)
+                    .set("completedAt", now)
+                    .unset("leaseExpiresAt")
+                    .unset("workerId");
+            if (mongoOperations.updateFirst(unclaimed, update, IngestJob.class).getModifiedCount() > 0) {
+                LOGGER.warn("Failed ingest job {} for report ID: {}: {}", job.getId(), job.getReportId(), errorMessage);
+            }
+        }
+    }
+
+    private void process(IngestJob job) {
+        Path directory = Path.of(job.getSpoolDir());
+        Optional<Report> reportOpt = reportsService.findReportById(job.getReportId());
+        if (reportOpt.isEmpty()) {
+            fail(job, directory, "Report not found");
+            return;
+        }
+        if (job.getAttempts() > maxAttempts) {
+            fail(job, directory, "Gave up after " + maxAttempts + " attempts");
+            return;
+        }
+        if (!ingestSpoolService.exists(directory)) {
+            // Retrying cannot bring back files lost with the spool directory.
+            fail(job, directory, "Spooled files lost from " + directory);
+            return;
+        }
+        Report report = reportOpt.get();
+        try {
+            LOGGER.info("Running ingest job {} for report ID: {} (attempt {})", job.getId(), report.getId(), job.getAttempts());
+            Organisation organisation = Optional.ofNullable(mongoOperations.findById(job.getOrgId(), Organisation.class))
+                    .orElseThrow(() -> new IllegalStateException("Organisation not found"));
+            List<MultipartFile> mediaFiles = ingestSpoolService.getMediaFiles(directory, job.getMediaFileNames(), job.getMediaContentTypes());
+            MultipartFile crashLog = ingestSpoolService.getCrashLog(directory, job.getCrashLogFileName(), job.getCrashLogContentType());
+            reportsService.completeBugReport(report, mediaFiles, crashLog, job.getDeviceMetadata(), organisation);
+            if (finish(job, IngestStatus.COMPLETED, null)) {
+                ingestSpoolService.delete(directory);
+            }
+        } catch (Exception e) {
+            LOGGER.error("Ingest job {} failed for report ID: {}", job.getId(), report.getId(), e);
+            if (job.getAttempts() < maxAttempts) {
+                finish(job, IngestStatus.QUEUED, e.getMessage());
+            } else {
+                fail(job, directory, e.getMessage());
+            }
+        }
+    }
+
+    private void fail(IngestJob job, Path directory, String errorMessage) {
+        if (finish(job, IngestStatus.FAILED, errorMessage) && spoolHost.equals(job.getSpoolHost())) {
+            ingestSpoolService.delete(directory);
+        }
+    }
+
+    /**
+     * Records the outcome of an attempt and returns whether this worker still held the lease.
+     */
+    private boolean finish(IngestJob job, IngestStatus status, String errorMessage) {
+        Date now = new Date();
+        Update update = new Update()
+                .set("status", status)
+                .set("errorMessage", errorMessage)
+                .set("updatedAt", now)
+                .unset("leaseExpiresAt")
+                .unset("workerId");
+        if (status != IngestStatus.QUEUED) {
+            update.set("completedAt", now);
+        }
+        return mongoOperations.updateFirst(leaseQuery(job), update, IngestJob.class).getModifiedCount() > 0;
+    }
+
+    /**
+     * Matches the job only while this worker holds its lease.
+     */
+    private Query leaseQuery(IngestJob job) {
+        return Query.query(Criteria.where("id").is(job.getId()).and("workerId").is(workerId).and("attempts").is(job.getAttempts()));
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.quashbugs.quash.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.quashbugs.quash.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Token-bucket admission control for SDK ingest endpoints. Every app gets a bucket per endpoint
+ * class sized by {@code rate-limit.ingest.<class>.per-minute} and {@code .burst}, and every
+ * organisation one {@code rate-limit.ingest.org-multiplier} times as large, shared by all its
+ * apps. A request is admitted only if both buckets have a token.
+ */
+@Component
+public class IngestRateLimiter {
+
+    public enum EndpointClass {
+        REPORT("report"),
+        BITMAPS("bitmaps"),
+        NETWORK_LOGS("network-logs");
+
+        private final String tagName;
+
+        EndpointClass(String tagName) {
+            this.tagName = tagName;
+        }
+
+        public String getTagName() {
+            return tagName;
+        }
+    }
+
+    private record Quota(long emissionIntervalNanos, int burst) {
+
+        private static Quota of(double perMinute, int burst) {
+            return new Quota((long) (Duration.ofMinutes(1).toNanos() / Math.max(perMinute, 0.001)), burst);
+        }
+
+        private Quota times(int multiplier) {
+            return new Quota(Math.max(1, emissionIntervalNanos / multiplier), burst * multiplier);
+        }
+    }
+
+    private static final String APP_SCOPE = "app";
+
+    private static final String ORG_SCOPE = "org";
+
+    private final boolean enabled;
+
+    private final Map<EndpointClass, Quota> appQuotas = new EnumMap<>(EndpointClass.class);
+
+    private final Map<EndpointClass, Quota> orgQuotas = new EnumMap<>(EndpointClass.class);
+
+    private final Cache<String, TokenBucket> buckets;
+
+    private final MeterRegistry meterRegistry;
+
+    @Autowired
+    public IngestRateLimiter(@Value("${rate-limit.ingest.enabled:true}") boolean enabled,
+                             @Value("${rate-limit.ingest.report.per-minute:60}") double reportPerMinute,
+                             @Value("${rate-limit.ingest.report.burst:20}") int reportBurst,
+                             @Value("${rate-limit.ingest.bitmaps.per-minute:30}") double bitmapsPerMinute,
+                             @Value("${rate-limit.ingest.bitmaps.burst:10}") int bitmapsBurst,
+                             @Value("${rate-limit.ingest.network-logs.per-minute:120}") double networkLogsPerMinute,
+                             @Value("${rate-limit.ingest.network-logs.burst:40}") int networkLogsBurst,
+                             @Value("${rate-limit.ingest.org-multiplier:4}") int orgMultiplier,
+                             @Value("${rate-limit.ingest.max-buckets:100000}") long maxBuckets,
+                             MeterRegistry meterRegistry) {
+        this.enabled = enabled;
+        appQuotas.put(EndpointClass.REPORT, Quota.of(reportPerMinute, reportBurst));
+        appQuotas.put(EndpointClass.BITMAPS, Quota.of(bitmapsPerMinute, bitmapsBurst));
+        appQuotas.put(EndpointClass.NETWORK_LOGS, Quota.of(networkLogsPerMinute, networkLogsBurst));
+        appQuotas.forEach((endpointClass, quota) -> orgQuotas.put(endpointClass, quota.times(Math.max(1, orgMultiplier))));
+        // An idle bucket refills completely within a few minutes, so dropping it loses nothing.
+        this.buckets = Caffeine.newBuilder()
+                .expireAfterAccess(Duration.ofMinutes(10))
+                .maximumSize(maxBuckets)
+                .build();
+        this.meterRegistry = meterRegistry;
+    }
+
+    /**
+     * Takes a token for the request from the app's bucket, if the app is known, and from the
+     * organisation's bucket. The app's bucket comes first, so an app over its quota does not
+     * use up the organisation's tokens at the expense of its other apps. Returns 0 if the
+     * request is admitted, otherwise the nanoseconds until it would be.
+     */
+    public long tryAcquire(EndpointClass endpointClass, String orgKey, String appId) {
+        if (!enabled) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        if (appId != null && !appId.isBlank()) {
+            long waitNanos = bucket(endpointClass, APP_SCOPE, orgKey + "/" + appId, appQuotas.get(endpointClass), now).tryAcquire(now);
+            if (waitNanos > 0) {
+                throttled(endpointClass, APP_SCOPE);
+                return waitNanos;
+            }
+        }
+        long waitNanos = bucket(endpointClass, ORG_SCOPE, orgKey, orgQuotas.get(endpointClass), now).tryAcquire(now);
+        if (waitNanos > 0) {
+            throttled(endpointClass, ORG_SCOPE);
+        }
+        return waitNanos;
+    }
+
+    private TokenBucket bucket(EndpointClass endpointClass, String scope, String key, Quota quota, long now) {
+        return buckets.get(endpointClass.getTagName() + ":" + scope + ":" + key,
+                k -> new TokenBucket(quota.emissionIntervalNanos(), quota.burst(), now));
+    }
+
+    private void throttled(EndpointClass endpointClass, String scope) {
+        Counter.builder("ingest.rate-limit.throttled")
+                .description("Ingest requests rejected by the rate limiter")
+                .tag("endpoint", endpointClass.getTagName())
+                .tag("scope", scope)
+                .register(meterRegistry)
+                .increment();
+    }
+}
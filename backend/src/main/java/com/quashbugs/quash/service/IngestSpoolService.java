@@ -0,0 +1,96 @@
+package com.quashbugs.quash.service;
+
+import com.quashbugs.quash.dto.miscellaneous.TempFileMultipartDTO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the files of asynchronously ingested reports in a local spool directory until their
+ * ingest job has uploaded them. A report's media are written to their own directory as
+ * {@code media-00000}, {@code media-00001}, ... in request order, next to its {@code crash-log},
+ * and the directory is removed once the job no longer needs them.
+ */
+@Service
+public class IngestSpoolService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IngestSpoolService.class);
+
+    private static final String CRASH_LOG_FILE = "crash-log";
+
+    @Value("${report.ingest.spool-dir:}")
+    private String spoolDir;
+
+    /**
+     * Writes the media files and crash log of a report to a new spool directory and returns its
+     * path. Either may be missing.
+     */
+    public Path spool(List<MultipartFile> mediaFiles, MultipartFile crashLog) throws IOException {
+        Path directory = Files.createTempDirectory(spoolRoot(), "report-");
+        try {
+            if (mediaFiles != null) {
+                for (int i = 0; i < mediaFiles.size(); i++) {
+                    mediaFiles.get(i).transferTo(mediaFile(directory, i));
+                }
+            }
+            if (crashLog != null) {
+                crashLog.transferTo(directory.resolve(CRASH_LOG_FILE));
+            }
+        } catch (IOException e) {
+            delete(directory);
+            throw e;
+        }
+        return directory;
+    }
+
+    public boolean exists(Path directory) {
+        return Files.isDirectory(directory);
+    }
+
+    /**
+     * Returns the spooled media as multipart files with their original names and content types.
+     */
+    public List<MultipartFile> getMediaFiles(Path directory, List<String> fileNames, List<String> contentTypes) {
+        List<MultipartFile> files = new ArrayList<>(contentTypes.size());
+        for (int i = 0; i < contentTypes.size(); i++) {
+            files.add(new TempFileMultipartDTO(mediaFile(directory, i), fileNames.get(i), contentTypes.get(i)));
+        }
+        return files;
+    }
+
+    /**
+     * Returns the spooled crash log, or {@code null} if the report was sent without one.
+     */
+    public MultipartFile getCrashLog(Path directory, String fileName, String contentType) {
+        Path crashLog = directory.resolve(CRASH_LOG_FILE);
+        return Files.exists(crashLog) ? new TempFileMultipartDTO(crashLog, fileName, contentType) : null;
+    }
+
+    public void delete(Path directory) {
+        try {
+            FileSystemUtils.deleteRecursively(directory);
+        } catch (IOException e) {
+            LOGGER.error("Error deleting spool directory {}: {}", directory, e.getMessage(), e);
+        }
+    }
+
+    private Path spoolRoot() throws IOException {
+        Path root = spoolDir == null || spoolDir.isBlank()
+                ? Path.of(System.getProperty("java.io.tmpdir"), "quash-ingest-spool")
+                : Path.of(spoolDir);
+        return Files.createDirectories(root);
+    }
+
+    private static Path mediaFile(Path directory, int index) {
+        return directory.resolve(String.format("media-%05d", index));
+    }
+}
@@ -6,7 +6,6 @@ import com.quashbugs.quash.model.Integration;
 import com.quashbugs.quash.model.Organisation;
 import com.quashbugs.quash.model.Report;
 import com.quashbugs.quash.model.User;
-import com.quashbugs.quash.repo.ApplicationRepository;
 import com.quashbugs.quash.repo.IntegrationRepository;
 import com.quashbugs.quash.repo.ReportRepository;
 import com.quashbugs.quash.repo.TeamMemberRepository;
@@ -58,7 +57,7 @@ public class JiraIntegrationService {
 
     private final IntegrationService integrationService;
 
-    private final ApplicationRepository applicationRepository;
+    private final AppMetadataCache appMetadataCache;
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JiraIntegrationService.class);
 
@@ -69,13 +68,13 @@ public class JiraIntegrationService {
             ReportRepository reportRepository,
             StorageService storageService,
             IntegrationService integrationService,
-            ApplicationRepository applicationRepository) {
+            AppMetadataCache appMetadataCache) {
         this.integrationRepository = integrationRepository;
         this.teamMemberRepository = teamMemberRepository;
         this.reportRepository = reportRepository;
         this.storageService = storageService;
         this.integrationService = integrationService;
-        this.applicationRepository = applicationRepository;
+        this.appMetadataCache = appMetadataCache;
     }
 
     public Integration getAccessFromRefreshToken(String code, User user) throws Exception {
@@ -283,7 +282,7 @@ public class JiraIntegrationService {
             if (report.isPresent()) {
                 Map<String, Object> integrationAgent = (Map<String, Object>) integration.getSettings().get("integrationAgent");
                 String agentId = integrationAgent.get("accountId").toString();
-                var integrationKeyMap = applicationRepository.findById(report.get().getAppId()).get().getIntegrationKeyMap();
+                var integrationKeyMap = appMetadataCache.get(report.get().getAppId()).get().getIntegrationKeyMap();
 
                 JSONObject jiraKeyMap = integrationKeyMap.get(JIRA);
                 if (jiraKeyMap == null || !jiraKeyMap.containsKey(projectKey) || !jiraKeyMap.containsKey(issueTypeKey)) {
@@ -2,25 +2,47 @@ package com.quashbugs.quash.service;
 
 import com.quashbugs.quash.model.Organisation;
 import com.quashbugs.quash.model.User;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
 import java.security.Key;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
+/**
+ * Issues and verifies the JWTs used by the dashboard and the SDKs. The signing key and parser
+ * are built once, and the claims of verified tokens are cached by the SHA-256 hash of the token
+ * until {@code token.verified-cache.ttl-seconds} pass or the token expires, whichever comes
+ * first. Tokens that fail verification are never cached.
+ */
 @Service
 public class JwtService {
 
-    @Value("${token.signing.key}")
-    private String jwtSigningKey;
+    private final Key signingKey;
+
+    private final JwtParser jwtParser;
+
+    private final Cache<String, Claims> verifiedTokens;
 
     @Value("${token.accessToken.expiration}")
     private long expiration;
@@ -28,6 +50,21 @@ public class JwtService {
     @Value("${token.refreshToken.expiration}")
     private long refreshExpiration;
 
+    @Autowired
+    public JwtService(@Value("${token.signing.key}") String jwtSigningKey,
+                      @Value("${token.verified-cache.ttl-seconds:300}") long verifiedCacheTtlSeconds,
+                      @Value("${token.verified-cache.max-size:10000}") long verifiedCacheMaxSize,
+                      MeterRegistry meterRegistry) {
+        this.signingKey = Keys.hmacShaKeyFor(Decoders.BASE64.decode(jwtSigningKey));
+        this.jwtParser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        this.verifiedTokens = Caffeine.newBuilder()
+                .expireAfter(new TokenExpiry(Duration.ofSeconds(verifiedCacheTtlSeconds)))
+                .maximumSize(verifiedCacheMaxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "verified-tokens");
+    }
+
     public String extractWorkEmail(String token) {
         return extractClaim(token, Claims::getSubject);
     }
@@ -42,7 +79,7 @@ public class JwtService {
                 .setSubject(user.getWorkEmail())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + expiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
@@ -56,22 +93,38 @@ public class JwtService {
                 .setSubject(user.getWorkEmail())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + refreshExpiration))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public boolean isTokenValid(String token, User user) {
-        final String workEmail = extractWorkEmail(token);
-        return (workEmail.equals(user.getWorkEmail())) && !isTokenExpired(token);
+        return isTokenValid(extractAllClaims(token), user);
+    }
+
+    /**
+     * Same as {@link #isTokenValid(String, User)} for a token that has already been parsed, so
+     * callers that need several claims verify the signature only once.
+     */
+    public boolean isTokenValid(Claims claims, User user) {
+        final String workEmail = claims.getSubject();
+        return (workEmail.equals(user.getWorkEmail())) && !isTokenExpired(claims);
     }
 
     public boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+        return isTokenExpired(extractAllClaims(token));
+    }
+
+    public boolean isTokenExpired(Claims claims) {
+        return claims.getExpiration().before(new Date());
     }
 
     public boolean isTokenValid(String token, Organisation organisation) {
-        final String orgId = extractOrgIdFromToken(token);
-        if (orgId == null || isTokenExpired(token)) {
+        return isTokenValid(extractAllClaims(token), organisation);
+    }
+
+    public boolean isTokenValid(Claims claims, Organisation organisation) {
+        final String orgId = extractOrgId(claims);
+        if (orgId == null || isTokenExpired(claims)) {
             return false;
         }
         String organisationIdString = String.valueOf(organisation.getId());
@@ -83,17 +136,12 @@ public class JwtService {
         return claimsResolvers.apply(claims);
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
-    }
-
+    /**
+     * Verifies the token and returns its claims. The returned claims may be shared with other
+     * callers and must not be modified.
+     */
     public Claims extractAllClaims(String token) {
-        return Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(token).getBody();
-    }
-
-    private Key getSigningKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(jwtSigningKey);
-        return Keys.hmacShaKeyFor(keyBytes);
+        return verifiedTokens.get(tokenHash(token), hash -> jwtParser.parseClaimsJws(token).getBody());
     }
 
     public String generateReportingToken(Organisation org) {
@@ -109,17 +157,62 @@ public class JwtService {
                 .setId(organisation.getOrgUniqueKey())
                 .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(Long.MAX_VALUE))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
+                .signWith(signingKey, SignatureAlgorithm.HS256)
                 .compact();
     }
 
     public Claims decodeToken(String token) {
-        return Jwts.parserBuilder().setSigningKey(getSigningKey()).build().parseClaimsJws(token).getBody();
+        return extractAllClaims(token);
     }
 
     public String extractOrgIdFromToken(String token) {
-        Claims claims = decodeToken(token);
+        return extractOrgId(decodeToken(token));
+    }
+
+    public String extractOrgId(Claims claims) {
         Long orgId = claims.get("orgId", Long.class);
         return orgId != null ? orgId.toString() : null;
     }
-}
\ No newline at end of file
+
+    private static String tokenHash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Keeps verified claims until the cache TTL passes or the token expires, so an expired token
+     * is always verified again and rejected.
+     */
+    private static final class TokenExpiry implements Expiry<String, Claims> {
+
+        private final long ttlMillis;
+
+        private TokenExpiry(Duration ttl) {
+            this.ttlMillis = ttl.toMillis();
+        }
+
+        @Override
+        public long expireAfterCreate(String key, Claims claims, long currentTime) {
+            long lifetimeMillis = ttlMillis;
+            Date expiration = claims.getExpiration();
+            if (expiration != null) {
+                lifetimeMillis = Math.min(lifetimeMillis, Math.max(0, expiration.getTime() - System.currentTimeMillis()));
+            }
+            return TimeUnit.MILLISECONDS.toNanos(lifetimeMillis);
+        }
+
+        @Override
+        public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+
+        @Override
+        public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
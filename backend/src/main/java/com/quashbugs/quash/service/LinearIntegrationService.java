@@ -7,7 +7,6 @@ import static com.quashbugs.quash.constants.Constants.LINEAR;
 import com.quashbugs.quash.model.Integration;
 import com.quashbugs.quash.model.Organisation;
 import com.quashbugs.quash.model.User;
-import com.quashbugs.quash.repo.ApplicationRepository;
 import com.quashbugs.quash.repo.IntegrationRepository;
 import com.quashbugs.quash.repo.ReportRepository;
 import com.quashbugs.quash.repo.TeamMemberRepository;
@@ -42,7 +41,7 @@ public class LinearIntegrationService {
 
     private final ReportRepository reportRepository;
 
-    private final ApplicationRepository applicationRepository;
+    private final AppMetadataCache appMetadataCache;
 
     @Autowired
     public LinearIntegrationService(IntegrationService integrationService,
@@ -50,13 +49,13 @@ public class LinearIntegrationService {
                                     IntegrationRepository integrationRepository,
                                     TeamMemberRepository teamMemberRepository,
                                     ReportRepository reportRepository,
-                                    ApplicationRepository applicationRepository) {
+                                    AppMetadataCache appMetadataCache) {
         this.integrationService = integrationService;
         this.storageService = storageService;
         this.integrationRepository = integrationRepository;
         this.teamMemberRepository = teamMemberRepository;
         this.reportRepository = reportRepository;
-        this.applicationRepository = applicationRepository;
+        this.appMetadataCache = appMetadataCache;
     }
 
     @Value("${spring.linear.auth_endpoint}")
@@ -170,7 +169,7 @@ public class LinearIntegrationService {
             var report = reportRepository.findById(issue);
 
             if (report.isPresent()) {
-                var integrationKeyMap = applicationRepository.findById(report.get().getAppId()).get().getIntegrationKeyMap();
+                var integrationKeyMap = appMetadataCache.get(report.get().getAppId()).get().getIntegrationKeyMap();
                 var linearKeyMap = integrationKeyMap.get("LINEAR");
                 if (linearKeyMap == null || !linearKeyMap.containsKey("teamId") || !linearKeyMap.containsKey("projectId")) {
                     throw new Exception("LINEAR integration keys not properly configured for application.");
@@ -0,0 +1,169 @@
+package com.quashbugs.quash.service;
+
+import com.quashbugs.quash.model.MediaBlob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Reference counts of content-addressed media objects, kept in the {@code media-blobs}
+ * collection. Every upload of a media file acquires a reference to the object named after its
+ * content hash and every delete releases one; the object itself is only uploaded by the first
+ * reference and only deleted with the last one.
+ * <p>
+ * The entry of an object being deleted is kept as a tombstone until the delete has completed, so
+ * an upload of the same content waits for it instead of uploading an object that the delete then
+ * removes.
+ */
+@Component
+public class MediaBlobRegistry {
+
+    private final MongoOperations mongoOperations;
+
+    private final Counter deduplicatedUploads;
+
+    private final Counter deduplicatedBytes;
+
+    @Value("${media.blobs.deleting-timeout-seconds:120}")
+    private long deletingTimeoutSeconds;
+
+    @Value("${media.blobs.acquire-timeout-millis:10000}")
+    private long acquireTimeoutMillis;
+
+    @Autowired
+    public MediaBlobRegistry(MongoOperations mongoOperations, MeterRegistry meterRegistry) {
+        this.mongoOperations = mongoOperations;
+        this.deduplicatedUploads = Counter.builder("media.blobs.deduplicated")
+                .description("Media uploads served by an already stored object")
+                .register(meterRegistry);
+        this.deduplicatedBytes = Counter.builder("media.blobs.deduplicated.bytes")
+                .description("Bytes not uploaded because the object was already stored")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Adds a reference to the object and returns whether it still has to be uploaded, which is
+     * the case for a new object and for one whose first upload has not completed. If the object
+     * is being deleted, waits for the delete to complete and then registers it as new.
+     */
+    public boolean acquire(String objectName, long size, String contentType) throws IOException {
+        long deadline = System.currentTimeMillis() + acquireTimeoutMillis;
+        while (true) {
+            Date now = new Date();
+            Update update = new Update()
+                    .inc("refCount", 1)
+                    .set("updatedAt", now)
+                    .setOnInsert("uploaded", false)
+                    .setOnInsert("deleting", false)
+                    .setOnInsert("size", size)
+                    .setOnInsert("contentType", contentType)
+                    .setOnInsert("createdAt", now);
+            Query live = Query.query(Criteria.where("_id").is(objectName).and("deleting").ne(true));
+            try {
+                MediaBlob blob = mongoOperations.findAndModify(live, update,
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), MediaBlob.class);
+                return countAcquired(blob, size);
+            } catch (DuplicateKeyException e) {
+                // The entry is a tombstone: the object is being deleted.
+                reclaimAbandonedTombstone(objectName);
+            }
+            if (System.currentTimeMillis() > deadline) {
+                throw new IOException("Timed out waiting for the deletion of " + objectName);
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for the deletion of " + objectName, e);
+            }
+        }
+    }
+
+    private boolean countAcquired(MediaBlob blob, long size) {
+        if (blob != null && blob.isUploaded()) {
+            deduplicatedUploads.increment();
+            deduplicatedBytes.increment(size);
+            return false;
+        }
+        return true;
+    }
+
+    public void markUploaded(String objectName) {
+        mongoOperations.updateFirst(byName(objectName), new Update().set("uploaded", true).set("updatedAt", new Date()), MediaBlob.class);
+    }
+
+    /**
+     * Removes a reference to the object and returns whether the object should be deleted, which
+     * is the case once no reference is left or if the object was never registered, as for media
+     * uploaded before objects were content addressed. When this returns {@code true} the caller
+     * must delete the object and then call {@link #deleted} or {@link #deleteFailed}.
+     */
+    public boolean release(String objectName) {
+        Update update = new Update().inc("refCount", -1).set("updatedAt", new Date());
+        MediaBlob blob = mongoOperations.findAndModify(byName(objectName), update,
+                FindAndModifyOptions.options().returnNew(true), MediaBlob.class);
+        if (blob == null) {
+            return true;
+        }
+        if (blob.getRefCount() > 0) {
+            return false;
+        }
+        // Only the release that turns the entry into a tombstone deletes the object; a concurrent
+        // upload of the same content may have acquired it again in the meantime.
+        Query unreferenced = Query.query(Criteria.where("_id").is(objectName)
+                .and("refCount").lte(0)
+                .and("deleting").ne(true));
+        Update tombstone = new Update().set("deleting", true).set("updatedAt", new Date());
+        return mongoOperations.updateFirst(unreferenced, tombstone, MediaBlob.class).getModifiedCount() > 0;
+    }
+
+    /**
+     * Removes the tombstone of an object once it has been deleted.
+     */
+    public void deleted(String objectName) {
+        mongoOperations.remove(tombstoneOf(objectName), MediaBlob.class);
+    }
+
+    /**
+     * Turns the tombstone of an object whose delete failed back into an unreferenced entry. The
+     * object may or may not still exist, so the next reference uploads it again.
+     */
+    public void deleteFailed(String objectName) {
+        Update update = new Update().set("deleting", false).set("uploaded", false).set("updatedAt", new Date());
+        mongoOperations.updateFirst(tombstoneOf(objectName), update, MediaBlob.class);
+    }
+
+    /**
+     * Takes over a tombstone left behind by an instance that stopped while deleting the object.
+     */
+    private void reclaimAbandonedTombstone(String objectName) {
+        Date cutoff = new Date(System.currentTimeMillis() - deletingTimeoutSeconds * 1000);
+        Query abandoned = tombstoneOf(objectName).addCriteria(Criteria.where("updatedAt").lt(cutoff));
+        Update update = new Update()
+                .set("deleting", false)
+                .set("uploaded", false)
+                .set("refCount", 0)
+                .set("updatedAt", new Date());
+        mongoOperations.updateFirst(abandoned, update, MediaBlob.class);
+    }
+
+    private static Query tombstoneOf(String objectName) {
+        return Query.query(Criteria.where("_id").is(objectName).and("deleting").is(true));
+    }
+
+    private static Query byName(String objectName) {
+        return Query.query(Criteria.where("_id").is(objectName));
+    }
+}
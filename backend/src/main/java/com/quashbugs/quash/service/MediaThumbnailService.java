@@ -0,0 +1,171 @@
+package com.quashbugs.quash.service;
+
+import com.quashbugs.quash.model.BugMedia;
+import com.quashbugs.quash.model.MediaType;
+import org.jcodec.api.JCodecException;
+import org.jcodec.api.awt.AWTFrameGrab;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Generates small JPEG thumbnails of report media in the background, so report lists do not
+ * have to load full-size media. Images are scaled down, GIFs use their first frame and videos a
+ * poster frame grabbed from the start of the video. The thumbnail of a media is stored next to
+ * it under {@link #thumbnailRefFor(String)} and recorded on the {@link BugMedia}.
+ */
+@Service
+public class MediaThumbnailService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MediaThumbnailService.class);
+
+    private static final Set<MediaType> THUMBNAIL_MEDIA_TYPES = Set.of(MediaType.IMAGE, MediaType.GIF, MediaType.VIDEO);
+
+    private static final String THUMBNAIL_SUFFIX = ".thumb.jpg";
+
+    private static final String THUMBNAIL_MIME_TYPE = "image/jpeg";
+
+    private final StorageService storageService;
+
+    private final MongoOperations mongoOperations;
+
+    private final Executor thumbnailExecutor;
+
+    @Value("${media.thumbnail.enabled:true}")
+    private boolean enabled;
+
+    @Value("${media.thumbnail.max-size:320}")
+    private int maxSize;
+
+    @Value("${media.thumbnail.quality:0.8}")
+    private float quality;
+
+    @Autowired
+    public MediaThumbnailService(StorageService storageService,
+                                 MongoOperations mongoOperations,
+                                 @Qualifier("thumbnailExecutor") Executor thumbnailExecutor) {
+        this.storageService = storageService;
+        this.mongoOperations = mongoOperations;
+        this.thumbnailExecutor = thumbnailExecutor;
+    }
+
+    /**
+     * Returns the object name of the thumbnail of a media object, derived from its own name.
+     */
+    public static String thumbnailRefFor(String mediaRef) {
+        int extension = mediaRef.lastIndexOf('.');
+        int directory = mediaRef.lastIndexOf('/');
+        String baseName = extension > directory ? mediaRef.substring(0, extension) : mediaRef;
+        return baseName + THUMBNAIL_SUFFIX;
+    }
+
+    /**
+     * Queues thumbnail generation for the given saved media. Media without a thumbnail keep
+     * being shown from their full-size URL.
+     */
+    public void generateThumbnails(List<BugMedia> mediaList) {
+        if (!enabled) {
+            return;
+        }
+        for (BugMedia media : mediaList) {
+            if (media.getId() != null && THUMBNAIL_MEDIA_TYPES.contains(media.getMediaType())) {
+                thumbnailExecutor.execute(() -> generateThumbnail(media));
+            }
+        }
+    }
+
+    private void generateThumbnail(BugMedia media) {
+        try {
+            BufferedImage source = media.getMediaType() == MediaType.VIDEO
+                    ? readPosterFrame(media.getMediaRef())
+                    : readImage(media.getMediaRef());
+            if (source == null) {
+                LOGGER.warn("Could not decode media {} for its thumbnail", media.getMediaRef());
+                return;
+            }
+            String thumbnailRef = thumbnailRefFor(media.getMediaRef());
+            storageService.uploadObject(thumbnailRef, encodeJpeg(scale(source)), THUMBNAIL_MIME_TYPE);
+            mongoOperations.updateFirst(Query.query(Criteria.where("id").is(media.getId())),
+                    new Update().set("thumbnailRef", thumbnailRef), BugMedia.class);
+        } catch (Exception e) {
+            LOGGER.error("Error generating thumbnail for media {}: {}", media.getMediaRef(), e.getMessage(), e);
+        }
+    }
+
+    private BufferedImage readImage(String mediaRef) throws IOException {
+        try (InputStream in = storageService.openStream(mediaRef)) {
+            return ImageIO.read(in);
+        }
+    }
+
+    private BufferedImage readPosterFrame(String mediaRef) throws IOException, JCodecException {
+        Path video = Files.createTempFile("quash-poster-", ".video");
+        try {
+            try (InputStream in = storageService.openStream(mediaRef)) {
+                Files.copy(in, video, StandardCopyOption.REPLACE_EXISTING);
+            }
+            return AWTFrameGrab.getFrame(video.toFile(), 0);
+        } finally {
+            Files.deleteIfExists(video);
+        }
+    }
+
+    private BufferedImage scale(BufferedImage source) {
+        double ratio = Math.min(1.0, (double) maxSize / Math.max(source.getWidth(), source.getHeight()));
+        int width = Math.max(1, (int) Math.round(source.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * ratio));
+        BufferedImage thumbnail = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = thumbnail.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, width, height);
+            graphics.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return thumbnail;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream output = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(output);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(quality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+}
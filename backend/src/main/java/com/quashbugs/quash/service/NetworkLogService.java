@@ -0,0 +1,452 @@
+package com.quashbugs.quash.service;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.quashbugs.quash.dto.miscellaneous.MetaDataDTO;
+import com.quashbugs.quash.dto.request.NetworkLogFilterDTO;
+import com.quashbugs.quash.dto.response.NetworkLogSummaryDTO;
+import com.quashbugs.quash.dto.response.PaginatedResponseDTO;
+import com.quashbugs.quash.model.NetworkLog;
+import com.quashbugs.quash.model.Report;
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.support.PageableExecutionUtils;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes network logs in unordered bulk inserts. Chunks are bounded both by entry count and by
+ * the approximate size of the captured bodies, since a single entry can carry several MB.
+ * Bodies above {@code network-logs.body.offload-threshold-bytes} are gzipped into object
+ * storage, and the document keeps the object name, a SHA-256 of the body and a short preview.
+ */
+@Service
+public class NetworkLogService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NetworkLogService.class);
+
+    private static final String NETWORK_LOGS_FIELD = "networkLogs";
+
+    private static final String GZIP_MIME_TYPE = "application/gzip";
+
+    private final MongoOperations mongoOperations;
+
+    private final ObjectMapper objectMapper;
+
+    private final StorageService storageService;
+
+    @Value("${network-logs.ingest.chunk-size:200}")
+    private int chunkSize;
+
+    @Value("${network-logs.ingest.chunk-bytes:8388608}")
+    private long chunkBytes;
+
+    @Value("${network-logs.body.offload-threshold-bytes:65536}")
+    private int offloadThresholdBytes;
+
+    @Value("${network-logs.body.preview-length:1024}")
+    private int previewLength;
+
+    @Value("${network-logs.summaries.max-page-size:500}")
+    private int maxSummaryPageSize;
+
+    private record OffloadedBody(String ref, String hash, long size, String preview) {
+    }
+
+    @Autowired
+    public NetworkLogService(MongoOperations mongoOperations, ObjectMapper objectMapper, StorageService storageService) {
+        this.mongoOperations = mongoOperations;
+        this.objectMapper = objectMapper;
+        this.storageService = storageService;
+    }
+
+    /**
+     * Parses network logs from a JSON stream one entry at a time and inserts them for the given
+     * report. The body may be either {@code {"networkLogs": [...]}} or a bare array. Either all
+     * entries are saved or none: if the stream turns out to be invalid partway, the entries
+     * already inserted are removed again, so the client can fix and resend the whole payload.
+     *
+     * @return the number of inserted network logs
+     * @throws IllegalArgumentException if the body is not one of the accepted shapes
+     */
+    public long ingest(String reportId, InputStream body) throws IOException {
+        long inserted = 0;
+        List<NetworkLog> written = new ArrayList<>();
+        Map<String, Optional<String>> objectPrefixes = new HashMap<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(body)) {
+            moveToNetworkLogsArray(parser);
+            List<NetworkLog> chunk = new ArrayList<>(chunkSize);
+            long chunkSizeInBytes = 0;
+            while (parser.nextToken() == JsonToken.START_OBJECT) {
+                NetworkLog networkLog = objectMapper.readValue(parser, NetworkLog.class);
+                networkLog.setReportId(reportId);
+                offloadLargeBodies(networkLog, objectPrefixes);
+                written.add(writtenRefs(networkLog));
+                chunk.add(networkLog);
+                chunkSizeInBytes += estimateSize(networkLog);
+                if (chunk.size() >= chunkSize || chunkSizeInBytes >= chunkBytes) {
+                    inserted += insertChunk(chunk);
+                    chunk.clear();
+                    chunkSizeInBytes = 0;
+                }
+            }
+            if (parser.currentToken() != JsonToken.END_ARRAY) {
+                throw new IllegalArgumentException("Network logs must be JSON objects");
+            }
+            inserted += insertChunk(chunk);
+        } catch (IOException | RuntimeException e) {
+            removeWritten(written);
+            throw e;
+        }
+        return inserted;
+    }
+
+    /**
+     * Inserts already bound network logs in chunks. As with {@link #ingest}, nothing is kept if
+     * any chunk fails.
+     */
+    public void insertAll(List<NetworkLog> networkLogs) throws IOException {
+        List<NetworkLog> written = new ArrayList<>(networkLogs.size());
+        Map<String, Optional<String>> objectPrefixes = new HashMap<>();
+        try {
+            List<NetworkLog> chunk = new ArrayList<>(Math.min(chunkSize, networkLogs.size()));
+            long chunkSizeInBytes = 0;
+            for (NetworkLog networkLog : networkLogs) {
+                offloadLargeBodies(networkLog, objectPrefixes);
+                written.add(writtenRefs(networkLog));
+                chunk.add(networkLog);
+                chunkSizeInBytes += estimateSize(networkLog);
+                if (chunk.size() >= chunkSize || chunkSizeInBytes >= chunkBytes) {
+                    insertChunk(chunk);
+                    chunk.clear();
+                    chunkSizeInBytes = 0;
+                }
+            }
+            insertChunk(chunk);
+        } catch (IOException | RuntimeException e) {
+            removeWritten(written);
+            throw e;
+        }
+    }
+
+    /**
+     * Keeps only what is needed to undo the write of a network log, so a long stream does not
+     * hold on to its bodies.
+     */
+    private static NetworkLog writtenRefs(NetworkLog networkLog) {
+        NetworkLog refs = new NetworkLog();
+        refs.setId(networkLog.getId());
+        refs.setRequestBodyRef(networkLog.getRequestBodyRef());
+        refs.setResponseBodyRef(networkLog.getResponseBodyRef());
+        return refs;
+    }
+
+    /**
+     * Removes the network logs and offloaded bodies written by a failed ingest.
+     */
+    private void removeWritten(List<NetworkLog> written) {
+        for (int from = 0; from < written.size(); from += chunkSize) {
+            List<NetworkLog> batch = written.subList(from, Math.min(from + chunkSize, written.size()));
+            try {
+                mongoOperations.remove(Query.query(Criteria.where("id").in(batch.stream().map(NetworkLog::getId).toList())), NetworkLog.class);
+            } catch (Exception e) {
+                LOGGER.error("Error removing network logs of a failed ingest: {}", e.getMessage(), e);
+            }
+            for (NetworkLog networkLog : batch) {
+                deleteBody(networkLog.getRequestBodyRef());
+                deleteBody(networkLog.getResponseBodyRef());
+            }
+        }
+    }
+
+    public List<NetworkLog> findByReportId(String reportId) {
+        return mongoOperations.find(Query.query(Criteria.where("reportId").is(reportId)), NetworkLog.class);
+    }
+
+    /**
+     * Returns one page of network log summaries of a report in capture order, without headers
+     * or bodies. Pages are capped at {@code network-logs.summaries.max-page-size} entries.
+     *
+     * @throws IllegalArgumentException if the page is negative or the size below 1
+     */
+    public PaginatedResponseDTO<NetworkLogSummaryDTO> findSummaries(String reportId, NetworkLogFilterDTO filter, int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("Page must not be negative and size must be at least 1");
+        }
+        size = Math.min(size, maxSummaryPageSize);
+        Criteria criteria = Criteria.where("reportId").is(reportId);
+        if (filter.getMinStatus() != null || filter.getMaxStatus() != null) {
+            Criteria status = criteria.and("responseCode");
+            if (filter.getMinStatus() != null) {
+                status.gte(filter.getMinStatus());
+            }
+            if (filter.getMaxStatus() != null) {
+                status.lte(filter.getMaxStatus());
+            }
+        }
+        if (filter.getMethod() != null && !filter.getMethod().isBlank()) {
+            criteria.and("requestMethod").is(filter.getMethod().toUpperCase(Locale.ROOT));
+        }
+        if (filter.getUrlPrefix() != null && !filter.getUrlPrefix().isEmpty()) {
+            // An anchored, case-sensitive regex without metacharacters can be answered from the index.
+            criteria.and("requestUrl").regex("^" + escapeRegex(filter.getUrlPrefix()));
+        }
+        if (filter.getMinDurationMs() != null) {
+            criteria.and("durationMs").gte(filter.getMinDurationMs());
+        }
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Order.asc("id")));
+        Query query = Query.query(criteria).with(pageable);
+        query.fields().include("requestUrl", "requestMethod", "responseCode", "durationMs", "errorMessage",
+                "timeStamp", "requestBodySize", "responseBodySize");
+        List<NetworkLogSummaryDTO> summaries = mongoOperations.find(query, NetworkLog.class).stream()
+                .map(NetworkLogService::toSummary)
+                .toList();
+        Page<NetworkLogSummaryDTO> summaryPage = PageableExecutionUtils.getPage(summaries, pageable,
+                () -> mongoOperations.count(Query.query(criteria), NetworkLog.class));
+
+        MetaDataDTO metaDataDTO = MetaDataDTO.builder()
+                .currentPage(summaryPage.getNumber())
+                .totalPages(summaryPage.getTotalPages())
+                .totalRecords(summaryPage.getTotalElements())
+                .perPage(summaryPage.getSize())
+                .hasMore(summaryPage.hasNext())
+                .build();
+        return new PaginatedResponseDTO<>(summaryPage.getContent(), metaDataDTO);
+    }
+
+    private static NetworkLogSummaryDTO toSummary(NetworkLog networkLog) {
+        return NetworkLogSummaryDTO.builder()
+                .id(networkLog.getId())
+                .requestUrl(networkLog.getRequestUrl())
+                .requestMethod(networkLog.getRequestMethod())
+                .responseCode(networkLog.getResponseCode())
+                .durationMs(networkLog.getDurationMs())
+                .errorMessage(networkLog.getErrorMessage())
+                .timeStamp(networkLog.getTimeStamp())
+                .requestBodySize(networkLog.getRequestBodySize())
+                .responseBodySize(networkLog.getResponseBodySize())
+                .build();
+    }
+
+    private static String escapeRegex(String value) {
+        StringBuilder escaped = new StringBuilder(value.length() + 8);
+        for (char c : value.toCharArray()) {
+            if ("\\^$.|?*+()[]{}".indexOf(c) >= 0) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Returns the full request or response body of a network log, reading it back from object
+     * storage when it was offloaded.
+     *
+     * @param part either {@code request} or {@code response}
+     * @return the body, or null if the network log does not exist in the report
+     */
+    public String getBody(String reportId, String networkLogId, String part) throws IOException {
+        boolean request = "request".equalsIgnoreCase(part);
+        if (!request && !"response".equalsIgnoreCase(part)) {
+            throw new IllegalArgumentException("Body part must be either request or response");
+        }
+        NetworkLog networkLog = mongoOperations.findOne(Query.query(Criteria.where("id").is(networkLogId).and("reportId").is(reportId)), NetworkLog.class);
+        if (networkLog == null) {
+            return null;
+        }
+        String ref = request ? networkLog.getRequestBodyRef() : networkLog.getResponseBodyRef();
+        if (ref == null) {
+            return request ? networkLog.getRequestBody() : networkLog.getResponseBody();
+        }
+        try (InputStream in = new GZIPInputStream(storageService.openStream(ref))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Deletes the network logs of a report together with their offloaded bodies.
+     */
+    public void deleteByReportId(String reportId) {
+        Query withRefs = Query.query(new Criteria().andOperator(
+                Criteria.where("reportId").is(reportId),
+                new Criteria().orOperator(Criteria.where("requestBodyRef").ne(null), Criteria.where("responseBodyRef").ne(null))));
+        withRefs.fields().include("requestBodyRef", "responseBodyRef");
+        for (NetworkLog networkLog : mongoOperations.find(withRefs, NetworkLog.class)) {
+            deleteBody(networkLog.getRequestBodyRef());
+            deleteBody(networkLog.getResponseBodyRef());
+        }
+        mongoOperations.remove(Query.query(Criteria.where("reportId").is(reportId)), NetworkLog.class);
+    }
+
+    private void deleteBody(String ref) {
+        if (ref == null) {
+            return;
+        }
+        try {
+            storageService.deleteObject(ref);
+        } catch (Exception e) {
+            LOGGER.error("Error deleting network log body {}: {}", ref, e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ids, storage references and body sizes are only ever set here, so values sent by clients are
+     * discarded.
+     */
+    private void offloadLargeBodies(NetworkLog networkLog, Map<String, Optional<String>> objectPrefixes) throws IOException {
+        networkLog.setId(new ObjectId().toHexString());
+        OffloadedBody request = offload(networkLog, "request", networkLog.getRequestBody(), objectPrefixes);
+        networkLog.setRequestBodyRef(request == null ? null : request.ref());
+        networkLog.setRequestBodyHash(request == null ? null : request.hash());
+        networkLog.setRequestBodySize(request == null ? utf8Length(networkLog.getRequestBody()) : request.size());
+        if (request != null) {
+            networkLog.setRequestBody(request.preview());
+        }
+        OffloadedBody response = offload(networkLog, "response", networkLog.getResponseBody(), objectPrefixes);
+        networkLog.setResponseBodyRef(response == null ? null : response.ref());
+        networkLog.setResponseBodyHash(response == null ? null : response.hash());
+        networkLog.setResponseBodySize(response == null ? utf8Length(networkLog.getResponseBody()) : response.size());
+        if (response != null) {
+            networkLog.setResponseBody(response.preview());
+        }
+    }
+
+    /**
+     * Offloaded bodies are stored under the same organisation and app prefix as the report's
+     * other media, resolved once per report and call.
+     */
+    private OffloadedBody offload(NetworkLog networkLog, String part, String body,
+                                  Map<String, Optional<String>> objectPrefixes) throws IOException {
+        if (body == null || body.length() <= offloadThresholdBytes / 4) {
+            // Even at four bytes per character such a body stays below the threshold.
+            return null;
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length <= offloadThresholdBytes) {
+            return null;
+        }
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(bytes);
+        }
+        String prefix = objectPrefixes.computeIfAbsent(networkLog.getReportId(), this::objectPrefix)
+                .map(p -> p + "/")
+                .orElse("");
+        String objectName = prefix + "network-logs/" + networkLog.getReportId() + "/" + networkLog.getId() + "/" + part + ".gz";
+        storageService.uploadObject(objectName, compressed.toByteArray(), GZIP_MIME_TYPE);
+        String preview = body.substring(0, Math.min(previewLength, body.length()));
+        return new OffloadedBody(objectName, sha256(bytes), bytes.length, preview);
+    }
+
+    /**
+     * Returns the UTF-8 encoded length of the body without encoding it, or {@code null} if there
+     * is no body.
+     */
+    private static Long utf8Length(String body) {
+        if (body == null) {
+            return null;
+        }
+        long length = 0;
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < body.length() && Character.isLowSurrogate(body.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // Lone surrogates are encoded as '?'.
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    private Optional<String> objectPrefix(String reportId) {
+        Query query = Query.query(Criteria.where("id").is(reportId));
+        query.fields().include("appId");
+        Report report = mongoOperations.findOne(query, Report.class);
+        return Optional.ofNullable(report != null ? storageService.objectPrefix(report.getAppId()) : null);
+    }
+
+    private static String sha256(byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private int insertChunk(List<NetworkLog> chunk) {
+        if (chunk.isEmpty()) {
+            return 0;
+        }
+        int inserted = mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, NetworkLog.class)
+                .insert(chunk)
+                .execute()
+                .getInsertedCount();
+        LOGGER.debug("Inserted {} network logs", inserted);
+        return inserted;
+    }
+
+    private static void moveToNetworkLogsArray(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token == JsonToken.START_ARRAY) {
+            return;
+        }
+        if (token != JsonToken.START_OBJECT) {
+            throw new IllegalArgumentException("Expected a JSON object or array of network logs");
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (NETWORK_LOGS_FIELD.equals(field) && value == JsonToken.START_ARRAY) {
+                return;
+            }
+            parser.skipChildren();
+        }
+        throw new IllegalArgumentException("Request body does not contain a networkLogs array");
+    }
+
+    private static long estimateSize(NetworkLog networkLog) {
+        return length(networkLog.getRequestBody())
+                + length(networkLog.getResponseBody())
+                + length(networkLog.getExceptionStackTrace())
+                + length(networkLog.getRequestUrl());
+    }
+
+    private static long length(String value) {
+        return value == null ? 0 : value.length();
+    }
+}
@@ -0,0 +1,238 @@
+package com.quashbugs.quash.service;
+
+import com.mongodb.DBRef;
+import com.quashbugs.quash.model.Organisation;
+import com.quashbugs.quash.model.QuashClientApplication;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps every organisation's SDK reporting token in memory, so ingest requests are authorized
+ * without reading the database. Reporting tokens carry the organisation's unique key as their
+ * token ID; each entry maps that ID to the organisation and the IDs of its registered apps.
+ * <p>
+ * The registry is loaded once the application is ready and kept current by the Mongo lifecycle
+ * listeners of organisations and applications. It is reloaded every
+ * {@code reporting-token.registry.refresh-ms} to pick up changes made by other instances.
+ * Token IDs of deleted organisations, and old keys of organisations whose key changed, stay
+ * revoked until the next reload. After that they are unknown, and callers fall back to the
+ * database, which must then only accept the organisation's current key.
+ * <p>
+ * Listener updates made while a reload reads the database win over the reloaded entries of the
+ * same tokens, so a reload never brings back a token that was revoked in the meantime.
+ */
+@Component
+@Lazy(false)
+public class ReportingTokenRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReportingTokenRegistry.class);
+
+    private static final String APPLICATIONS_COLLECTION = "applications";
+
+    private final MongoOperations mongoOperations;
+
+    private final ConcurrentMap<String, ReportingToken> tokensById = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<Long, String> tokenIdsByOrgId = new ConcurrentHashMap<>();
+
+    /**
+     * Guards every write to the maps. Token IDs and organisation IDs written by listeners since
+     * the current reload started are recorded, so the reload leaves their entries alone.
+     */
+    private final Object writeLock = new Object();
+
+    private final Set<String> changedTokenIds = new HashSet<>();
+
+    private final Set<Long> changedOrgIds = new HashSet<>();
+
+    private record ReportingToken(Organisation organisation, Set<String> appIds, boolean revoked) {
+
+        private ReportingToken withApp(String appId) {
+            Set<String> apps = new HashSet<>(appIds);
+            apps.add(appId);
+            return new ReportingToken(organisation, Set.copyOf(apps), revoked);
+        }
+
+        private ReportingToken withoutApp(String appId) {
+            Set<String> apps = new HashSet<>(appIds);
+            apps.remove(appId);
+            return new ReportingToken(organisation, Set.copyOf(apps), revoked);
+        }
+
+        private ReportingToken revoke() {
+            return new ReportingToken(organisation, appIds, true);
+        }
+    }
+
+    @Autowired
+    public ReportingTokenRegistry(MongoOperations mongoOperations) {
+        this.mongoOperations = mongoOperations;
+    }
+
+    /**
+     * Returns the organisation a reporting token belongs to, or empty if the token ID is unknown,
+     * revoked or issued for a different organisation.
+     */
+    public Optional<Organisation> findOrganisation(String tokenId, long orgId) {
+        if (tokenId == null) {
+            return Optional.empty();
+        }
+        ReportingToken token = tokensById.get(tokenId);
+        if (token == null || token.revoked() || token.organisation().getId() != orgId) {
+            return Optional.empty();
+        }
+        return Optional.of(token.organisation());
+    }
+
+    public boolean isRevoked(String tokenId) {
+        if (tokenId == null) {
+            return false;
+        }
+        ReportingToken token = tokensById.get(tokenId);
+        return token != null && token.revoked();
+    }
+
+    /**
+     * Returns whether the app is registered to the organisation. Apps registered on another
+     * instance since the last reload are not known yet, so {@code false} is not conclusive.
+     */
+    public boolean hasApp(long orgId, String appId) {
+        String tokenId = tokenIdsByOrgId.get(orgId);
+        ReportingToken token = tokenId != null ? tokensById.get(tokenId) : null;
+        return token != null && !token.revoked() && token.appIds().contains(appId);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${reporting-token.registry.refresh-ms:300000}",
+            fixedDelayString = "${reporting-token.registry.refresh-ms:300000}")
+    public void reload() {
+        synchronized (writeLock) {
+            changedTokenIds.clear();
+            changedOrgIds.clear();
+        }
+        try {
+            Map<Long, Set<String>> appIdsByOrgId = new HashMap<>();
+            Query appQuery = new Query();
+            appQuery.fields().include("organisation");
+            for (Document app : mongoOperations.find(appQuery, Document.class, APPLICATIONS_COLLECTION)) {
+                Long orgId = referencedOrgId(app.get("organisation"));
+                if (orgId != null) {
+                    appIdsByOrgId.computeIfAbsent(orgId, id -> new HashSet<>()).add(app.get("_id").toString());
+                }
+            }
+
+            Map<String, ReportingToken> tokens = new HashMap<>();
+            Map<Long, String> tokenIds = new HashMap<>();
+            for (Organisation organisation : mongoOperations.findAll(Organisation.class)) {
+                if (organisation.getOrgUniqueKey() == null) {
+                    continue;
+                }
+                Set<String> appIds = appIdsByOrgId.getOrDefault(organisation.getId(), Set.of());
+                tokens.put(organisation.getOrgUniqueKey(), new ReportingToken(organisation, Set.copyOf(appIds), false));
+                tokenIds.put(organisation.getId(), organisation.getOrgUniqueKey());
+            }
+
+            synchronized (writeLock) {
+                tokensById.keySet().removeIf(id -> !tokens.containsKey(id) && !changedTokenIds.contains(id));
+                tokens.forEach((id, token) -> {
+                    if (!changedTokenIds.contains(id)) {
+                        tokensById.put(id, token);
+                    }
+                });
+                tokenIdsByOrgId.keySet().removeIf(id -> !tokenIds.containsKey(id) && !changedOrgIds.contains(id));
+                tokenIds.forEach((id, tokenId) -> {
+                    if (!changedOrgIds.contains(id)) {
+                        tokenIdsByOrgId.put(id, tokenId);
+                    }
+                });
+            }
+            LOGGER.info("Loaded {} reporting tokens", tokens.size());
+        } catch (Exception e) {
+            LOGGER.error("Error loading reporting tokens: {}", e.getMessage(), e);
+        }
+    }
+
+    public void organisationSaved(Organisation organisation) {
+        synchronized (writeLock) {
+            String tokenId = organisation.getOrgUniqueKey();
+            String previousTokenId = tokenId != null
+                    ? tokenIdsByOrgId.put(organisation.getId(), tokenId)
+                    : tokenIdsByOrgId.remove(organisation.getId());
+            changedOrgIds.add(organisation.getId());
+            if (previousTokenId != null && !previousTokenId.equals(tokenId)) {
+                tokensById.computeIfPresent(previousTokenId, (id, token) -> token.revoke());
+                changedTokenIds.add(previousTokenId);
+            }
+            if (tokenId != null) {
+                tokensById.compute(tokenId, (id, token) -> new ReportingToken(organisation,
+                        token != null ? token.appIds() : Set.of(), false));
+                changedTokenIds.add(tokenId);
+            }
+        }
+    }
+
+    public void organisationDeleted(long orgId) {
+        synchronized (writeLock) {
+            String tokenId = tokenIdsByOrgId.remove(orgId);
+            changedOrgIds.add(orgId);
+            if (tokenId != null) {
+                tokensById.computeIfPresent(tokenId, (id, token) -> token.revoke());
+                changedTokenIds.add(tokenId);
+            }
+        }
+    }
+
+    public void applicationSaved(QuashClientApplication application) {
+        Organisation organisation = application.getOrganisation();
+        if (organisation == null || organisation.getOrgUniqueKey() == null) {
+            return;
+        }
+        synchronized (writeLock) {
+            tokenIdsByOrgId.putIfAbsent(organisation.getId(), organisation.getOrgUniqueKey());
+            changedOrgIds.add(organisation.getId());
+            tokensById.compute(organisation.getOrgUniqueKey(), (id, token) -> token != null
+                    ? token.withApp(application.getId())
+                    : new ReportingToken(organisation, Set.of(application.getId()), false));
+            changedTokenIds.add(organisation.getOrgUniqueKey());
+        }
+    }
+
+    public void applicationDeleted(String appId) {
+        synchronized (writeLock) {
+            tokensById.replaceAll((id, token) -> {
+                if (!token.appIds().contains(appId)) {
+                    return token;
+                }
+                changedTokenIds.add(id);
+                return token.withoutApp(appId);
+            });
+        }
+    }
+
+    private static Long referencedOrgId(Object reference) {
+        Object id = null;
+        if (reference instanceof DBRef dbRef) {
+            id = dbRef.getId();
+        } else if (reference instanceof Document document) {
+            id = document.get("$id");
+        }
+        return id instanceof Number number ? number.longValue() : null;
+    }
+}
@@ -1,13 +1,15 @@
 package com.quashbugs.quash.service;
 
-import com.quashbugs.quash.dto.miscellaneous.InMemoryMultipartDTO;
+import com.quashbugs.quash.dto.miscellaneous.AppMetadataDTO;
 import com.quashbugs.quash.dto.miscellaneous.MetaDataDTO;
+import com.quashbugs.quash.dto.miscellaneous.TempFileMultipartDTO;
 import com.quashbugs.quash.dto.miscellaneous.ThreadUploadsMediaDTO;
 import com.quashbugs.quash.dto.request.IssuesRequestBodyDTO;
+import com.quashbugs.quash.dto.request.NetworkLogFilterDTO;
 import com.quashbugs.quash.dto.request.ReportRequestDTO;
 import com.quashbugs.quash.dto.response.ChatThreadResponseDTO;
+import com.quashbugs.quash.dto.response.NetworkLogSummaryDTO;
 import com.quashbugs.quash.dto.response.PaginatedResponseDTO;
-import com.quashbugs.quash.dto.response.ResponseDTO;
 import com.quashbugs.quash.exceptions.OrganisationNotFoundException;
 import com.quashbugs.quash.exceptions.ReportNotFoundException;
 import com.quashbugs.quash.model.*;
@@ -15,26 +17,27 @@ import com.quashbugs.quash.repo.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.support.PageableExecutionUtils;
 import org.springframework.data.util.Pair;
-import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.multipart.MultipartFile;
 
-import javax.imageio.ImageIO;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.CompletableFuture;
 
 import static com.quashbugs.quash.constants.Constants.FIFTEEN_MB;
 
@@ -53,6 +56,10 @@ public class ReportsService {
 
     private final GifCreationService gifCreationService;
 
+    private final SessionVideoService sessionVideoService;
+
+    private final AppMetadataCache appMetadataCache;
+
     private final UtilsService utilsService;
 
     private final SlackIntegrationService slackService;
@@ -63,8 +70,14 @@ public class ReportsService {
 
     private final ChatThreadRepository chatThreadRepository;
 
+    private final NetworkLogService networkLogService;
+
+    private final MediaThumbnailService mediaThumbnailService;
+
     private static final Logger LOGGER = LoggerFactory.getLogger(ReportsService.class);
 
+    private static final Sort REPORT_LIST_SORT = Sort.by(Sort.Order.desc("createdAt"), Sort.Order.desc("id"));
+
     @Autowired
     public ReportsService(OrganisationRepository organisationRepository,
                           DeviceMetaRepository deviceMetadataRepository,
@@ -72,41 +85,116 @@ public class ReportsService {
                           StorageService storageService,
                           JwtService jwtService,
                           GifCreationService gifCreationService,
+                          SessionVideoService sessionVideoService,
+                          AppMetadataCache appMetadataCache,
                           UtilsService utilsService,
                           SlackIntegrationService slackService,
                           NetworkRepository networkRepository,
                           ChatUploadRepository chatUploadRepository,
-                          ChatThreadRepository chatThreadRepository) {
+                          ChatThreadRepository chatThreadRepository,
+                          NetworkLogService networkLogService,
+                          MediaThumbnailService mediaThumbnailService) {
         this.organisationRepository = organisationRepository;
         this.deviceMetadataRepository = deviceMetadataRepository;
         this.reportRepository = reportRepository;
         this.storageService = storageService;
         this.jwtService = jwtService;
         this.gifCreationService = gifCreationService;
+        this.sessionVideoService = sessionVideoService;
+        this.appMetadataCache = appMetadataCache;
         this.utilsService = utilsService;
         this.slackService = slackService;
         this.networkRepository = networkRepository;
         this.chatUploadRepository = chatUploadRepository;
         this.chatThreadRepository = chatThreadRepository;
+        this.networkLogService = networkLogService;
+        this.mediaThumbnailService = mediaThumbnailService;
     }
 
     public Report save(Report report) {
         return reportRepository.save(report);
     }
 
-    public PaginatedResponseDTO<Report> getReportsByAppId(String appId, int page, int size) {
-        Sort sort = Sort.by(Sort.Order.desc("createdAt"));
-        Pageable pageable = PageRequest.of(page, size, sort);
-        Page<Report> reportPage = reportRepository.findByAppId(appId, pageable);
-        enrichReportsWithSignedUrls(reportPage.getContent());
+    public PaginatedResponseDTO<Report> getReportsByAppId(String appId, int page, int size, boolean includeTotal) {
+        Pageable pageable = PageRequest.of(page, size, REPORT_LIST_SORT);
+        MetaDataDTO metaDataDTO;
+        List<Report> reports;
+        if (includeTotal) {
+            List<Report> pageContent = reportRepository.findPageWithReferencesByAppId(appId, pageable);
+            Page<Report> reportPage = PageableExecutionUtils.getPage(pageContent, pageable, () -> reportRepository.countByAppId(appId));
+            reports = reportPage.getContent();
+            metaDataDTO = MetaDataDTO.builder()
+                    .currentPage(reportPage.getNumber())
+                    .totalPages(reportPage.getTotalPages())
+                    .totalRecords(reportPage.getTotalElements())
+                    .perPage(reportPage.getSize())
+                    .hasMore(reportPage.hasNext())
+                    .build();
+        } else {
+            Slice<Report> reportSlice = reportRepository.findSliceWithReferencesByAppId(appId, pageable);
+            reports = reportSlice.getContent();
+            metaDataDTO = MetaDataDTO.builder()
+                    .currentPage(reportSlice.getNumber())
+                    .perPage(reportSlice.getSize())
+                    .hasMore(reportSlice.hasNext())
+                    .build();
+        }
+        enrichReportsWithSignedUrls(reports);
+        return new PaginatedResponseDTO<>(reports, metaDataDTO);
+    }
+
+    /**
+     * Keyset variant of {@link #getReportsByAppId(String, int, int, boolean)}. The cursor is the
+     * {@code nextCursor} of the previous response, or null for the first page.
+     *
+     * @throws IllegalArgumentException if the cursor cannot be decoded
+     */
+    public PaginatedResponseDTO<Report> getReportsByAppIdAfterCursor(String appId, String cursor, int size, boolean includeTotal) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Page size must not be less than one");
+        }
+        Date createdAt = null;
+        String lastId = null;
+        if (cursor != null && !cursor.isBlank()) {
+            Pair<Date, String> position = decodeReportCursor(cursor);
+            createdAt = position.getFirst();
+            lastId = position.getSecond();
+        }
+        Slice<Report> reportSlice = reportRepository.findSliceWithReferencesByAppIdBefore(appId, createdAt, lastId, size);
+        List<Report> reports = reportSlice.getContent();
+
+        MetaDataDTO.MetaDataDTOBuilder metaDataDTO = MetaDataDTO.builder()
+                .perPage(size)
+                .hasMore(reportSlice.hasNext());
+        if (reportSlice.hasNext()) {
+            Report last = reports.get(reports.size() - 1);
+            metaDataDTO.nextCursor(encodeReportCursor(last.getCreatedAt(), last.getId()));
+        }
+        if (includeTotal) {
+            long total = reportRepository.countByAppId(appId);
+            metaDataDTO.totalRecords(total)
+                    .totalPages((int) Math.ceil((double) total / size));
+        }
+        enrichReportsWithSignedUrls(reports);
+        return new PaginatedResponseDTO<>(reports, metaDataDTO.build());
+    }
 
-        MetaDataDTO metaDataDTO = new MetaDataDTO(
-                reportPage.getNumber(),
-                reportPage.getTotalPages(),
-                reportPage.getTotalElements(),
-                reportPage.getSize()
-        );
-        return new PaginatedResponseDTO<>(reportPage.getContent(), metaDataDTO);
+    private static String encodeReportCursor(Date createdAt, String id) {
+        String position = createdAt.getTime() + ":" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Pair<Date, String> decodeReportCursor(String cursor) {
+        String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = position.indexOf(':');
+        if (separator <= 0 || separator == position.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        try {
+            return Pair.of(new Date(Long.parseLong(position.substring(0, separator))), position.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
     }
 
     public void enrichReportsWithSignedUrls(List<Report> reports) {
@@ -131,6 +219,9 @@ public class ReportsService {
         if (report.getListOfMedia() != null) {
             for (BugMedia media : report.getListOfMedia()) {
                 mediaRefs.add(media.getMediaRef());
+                if (media.getThumbnailRef() != null) {
+                    mediaRefs.add(media.getThumbnailRef());
+                }
             }
         }
         if (report.getCrashLog() != null) {
@@ -145,6 +236,9 @@ public class ReportsService {
                 if (signedUrl != null) {
                     media.setMediaUrl(signedUrl);
                 }
+                if (media.getThumbnailRef() != null) {
+                    media.setThumbnailUrl(signedUrls.get(media.getThumbnailRef()));
+                }
             }
         }
         if (report.getCrashLog() != null) {
@@ -160,11 +254,45 @@ public class ReportsService {
         return reportRepository.findById(reportId);
     }
 
+    /**
+     * Allocates the ID of a new report and saves it without its media, crash log and device
+     * metadata, which {@link #completeBugReport} adds later.
+     */
+    public Report reserveBugReport(ReportRequestDTO bugReportRequestDTO, Organisation organisation) throws Exception {
+        String orgId = String.valueOf(organisation.getId());
+        if (!utilsService.doesAppBelongToThisOrg(bugReportRequestDTO.getAppId(), orgId)) {
+            throw new Exception("App does not belong to this org");
+        }
+        return save(utilsService.createReportFromRequest(bugReportRequestDTO, organisation));
+    }
+
+    /**
+     * Adds the media, crash log and device metadata to a reserved report. Each part is saved as
+     * soon as it is attached and skipped if the report already has it, so a retry after a
+     * partial failure does not attach the same files twice.
+     */
+    public Report completeBugReport(Report report, List<MultipartFile> mediaFiles, MultipartFile crashLog,
+                                    DeviceMetadata deviceMetadata, Organisation organisation) throws Exception {
+        if (mediaFiles != null && !mediaFiles.isEmpty() && (report.getListOfMedia() == null || report.getListOfMedia().isEmpty())) {
+            report.setListOfMedia(utilsService.saveMediaForReport(mediaFiles, report));
+            save(report);
+        }
+        if (crashLog != null && report.getCrashLog() == null) {
+            report.setCrashLog(utilsService.saveCrashLog(crashLog, report));
+            save(report);
+        }
+        if (deviceMetadata != null && report.getDeviceMetadata() == null) {
+            report.setDeviceMetadata(getOrSaveDeviceMetadata(deviceMetadata, organisation));
+            save(report);
+        }
+        return report;
+    }
+
     public Report createBugReport(ReportRequestDTO bugReportRequestDTO, Organisation organisation) throws Exception {
         try {
             String orgId = String.valueOf(organisation.getId());
             if (utilsService.doesAppBelongToThisOrg(bugReportRequestDTO.getAppId(), orgId)) {
-                Report report = utilsService.createReportFromRequest(bugReportRequestDTO, orgId);
+                Report report = utilsService.createReportFromRequest(bugReportRequestDTO, organisation);
                 if (bugReportRequestDTO.getMediaFiles() != null) {
                     List<BugMedia> mediaList = utilsService.saveMediaForReport(bugReportRequestDTO.getMediaFiles(), report);
                     report.setListOfMedia(mediaList);
@@ -188,22 +316,47 @@ public class ReportsService {
     }
 
     @Transactional(rollbackFor = ReportNotFoundException.class)
-    public List<NetworkLog> saveNetworkLogs(List<NetworkLog> networkLogs, String reportId) throws ReportNotFoundException {
+    public List<NetworkLog> saveNetworkLogs(List<NetworkLog> networkLogs, String reportId) throws ReportNotFoundException, IOException {
         if (reportRepository.findById(reportId).isPresent()) {
             for (NetworkLog log : networkLogs) {
                 log.setReportId(reportId);
             }
-            networkRepository.saveAll(networkLogs);
+            networkLogService.insertAll(networkLogs);
             return networkLogs;
         } else {
             throw new ReportNotFoundException("Report with ID " + reportId + " doesn't exist.");
         }
     }
 
+    /**
+     * Streams network logs from the request body into the report without binding the whole
+     * body in memory.
+     *
+     * @return the number of saved network logs
+     */
+    public long ingestNetworkLogs(InputStream body, String reportId) throws ReportNotFoundException, IOException {
+        if (!reportRepository.existsById(reportId)) {
+            throw new ReportNotFoundException("Report with ID " + reportId + " doesn't exist.");
+        }
+        return networkLogService.ingest(reportId, body);
+    }
+
     public List<NetworkLog> getNetworkLogs(String reportId) {
         return networkRepository.findByReportId(reportId);
     }
 
+    public PaginatedResponseDTO<NetworkLogSummaryDTO> getNetworkLogSummaries(String reportId, NetworkLogFilterDTO filter, int page, int size) {
+        return networkLogService.findSummaries(reportId, filter, page, size);
+    }
+
+    /**
+     * Returns the full request or response body of a network log. Large bodies are only kept
+     * as a preview on the network log itself.
+     */
+    public String getNetworkLogBody(String reportId, String networkLogId, String part) throws IOException {
+        return networkLogService.getBody(reportId, networkLogId, part);
+    }
+
     public boolean exportIssuesToSlack(IssuesRequestBodyDTO issues) throws Exception {
         for (var issue : issues.getIssues()) {
             var reportOpt = findReportById(issue);
@@ -241,7 +394,7 @@ public class ReportsService {
     }
 
     private void deleteReportNetworkLogs(String reportId) {
-        networkRepository.deleteByReportId(reportId);
+        networkLogService.deleteByReportId(reportId);
     }
 
     public void validateRequest(ReportRequestDTO request) {
@@ -377,99 +530,77 @@ public class ReportsService {
         var reportOpt = reportRepository.findById(reportId);
         var report = reportOpt.get();
         List<String> allMediaRef = new ArrayList<>();
-        if (report.getListOfMedia() != null) {
-            for (BugMedia media : report.getListOfMedia()) {
-                allMediaRef.add(media.getMediaRef());
-            }
-        }
-        if (report.getCrashLog() != null) {
-            allMediaRef.add(report.getCrashLog().getMediaRef());
-        }
+        collectMediaRefs(report, allMediaRef);
         Map<String, String> signedUrls = utilsService.generateSignedUrls(allMediaRef);
         applySignedUrlsToReport(report, signedUrls);
 
         return report;
     }
 
-    @Async
-    public CompletableFuture<ResponseEntity<ResponseDTO>> processBitmapsAndCreateGif(Report report, List<MultipartFile> files) {
-        try {
-            updateReportStatus(report, GifStatus.PROCESSING);
-            List<GifBitmap> gifBitmaps = utilsService.saveGifBitmapsForReport(files, report);
-            LOGGER.info("Validating {} bitmaps for report ID: {}", files.size(), report.getId());
-            for (MultipartFile file : files) {
-                try {
-                    BufferedImage image = ImageIO.read(file.getInputStream());
-                    if (image == null) {
-                        throw new IOException("Invalid image format: " + file.getOriginalFilename());
-                    }
-                } catch (IOException e) {
-                    updateReportStatus(report, GifStatus.FAILED);
-                    throw new RuntimeException("An error occurred while validating the input bitmaps: " + e.getMessage(), e);
-                }
-            }
-            LOGGER.info("Creating GIF for report ID: {}", report.getId());
-            try (ByteArrayOutputStream gifOutputStream = gifCreationService.createGif(files, 120)) {
-                MultipartFile gifFile = new InMemoryMultipartDTO(gifOutputStream.toByteArray(), "generated.gif", "image/gif");
-                Pair<String, MediaType> uploadResult = storageService.upload(gifFile, report);
-                return CompletableFuture.completedFuture(handleUploadSuccess(report, gifBitmaps, uploadResult));
-            }
-        } catch (IOException e) {
-            updateReportStatus(report, GifStatus.FAILED);
-            throw new RuntimeException("An error occurred while processing the GIF generation request: " + e.getMessage(), e);
-        } catch (Exception e) {
-            updateReportStatus(report, GifStatus.FAILED);
-            throw new RuntimeException(e);
+    /**
+     * Uploads the bitmaps a GIF will be created from and attaches them to the report.
+     */
+    public void attachGifBitmaps(Report report, List<MultipartFile> files) throws Exception {
+        utilsService.saveGifBitmapsForReport(files, report);
+        save(report);
+    }
+
+    /**
+     * Renders the bitmaps of the report as a GIF, or as an MP4 video if the app opted in, uploads
+     * it and adds it to the report media. The bitmaps are deleted once the recording is stored.
+     * Runs on a GIF job worker.
+     */
+    public BugMedia renderSessionMedia(Report report) throws Exception {
+        List<GifBitmap> gifBitmaps = report.getListOfGif();
+        if (gifBitmaps == null || gifBitmaps.isEmpty()) {
+            throw new IllegalStateException("Report " + report.getId() + " has no bitmaps to render");
         }
+        Pair<String, MediaType> uploadResult = renderAndUpload(report, utilsService.getGifBitmapSources(gifBitmaps));
+        gifBitmaps.forEach(storageService::deleteGifBitmap);
+        return attachSessionMedia(report, uploadResult);
     }
 
-    @Async
-    public CompletableFuture<ResponseEntity<ResponseDTO>> startGifProcessing(Report report) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                LOGGER.info("Updating report status to PROCESSING for report ID: {}", report.getId());
-                updateReportStatus(report, GifStatus.PROCESSING);
+    /**
+     * Renders the given frames like {@link #renderSessionMedia(Report)} for bitmaps that were
+     * never stored with the report.
+     */
+    public BugMedia renderSessionMedia(Report report, List<? extends InputStreamSource> frames) throws Exception {
+        return attachSessionMedia(report, renderAndUpload(report, frames));
+    }
 
-                List<GifBitmap> gifBitmaps = report.getListOfGif();
-                LOGGER.info("Downloading media as byte arrays for report ID: {}", report.getId());
-                List<byte[]> imageByteArrayList = utilsService.downloadMediaAsByteArrays(gifBitmaps);
+    private Pair<String, MediaType> renderAndUpload(Report report, List<? extends InputStreamSource> frames) throws Exception {
+        SessionRenderer renderer = getSessionRenderer(report.getAppId());
+        LOGGER.info("Rendering session as {} for report ID: {}", renderer, report.getId());
+        try (TempFileMultipartDTO mediaFile = renderer == SessionRenderer.MP4
+                ? sessionVideoService.createVideo(frames, 120)
+                : gifCreationService.createGif(frames, 120)) {
+            LOGGER.info("Uploading rendered session for report ID: {}", report.getId());
+            return storageService.upload(mediaFile, report);
+        }
+    }
 
-                LOGGER.info("Creating GIF from byte arrays for report ID: {}", report.getId());
-                try (ByteArrayOutputStream gifOutputStream = gifCreationService.createGifFromByteArrays(imageByteArrayList, 120)) {
-                    MultipartFile gifFile = new InMemoryMultipartDTO(gifOutputStream.toByteArray(), "generated.gif", "image/gif");
-                    LOGGER.info("Uploading generated GIF for report ID: {}", report.getId());
-                    Pair<String, com.quashbugs.quash.model.MediaType> uploadResult = storageService.upload(gifFile, report);
-                    return handleUploadSuccess(report, gifBitmaps, uploadResult);
-                }
-            } catch (Exception e) {
-                LOGGER.error("An error occurred while processing the GIF generation request for report ID: {}", report.getId(), e);
-                updateReportStatus(report, GifStatus.FAILED);
-                throw new RuntimeException("An error occurred while processing the GIF generation request: " + e.getMessage(), e);
-            }
-        });
-    }
-
-    private ResponseEntity<ResponseDTO> handleUploadSuccess(Report report, List<GifBitmap> gifBitmaps, Pair<String, com.quashbugs.quash.model.MediaType> uploadResult) {
-        if (uploadResult != null) {
-            gifBitmaps.forEach(storageService::deleteGifBitmap);
-            BugMedia bugMedia = utilsService.getMediaObject(uploadResult.getFirst());
-            bugMedia.setMediaUrl(storageService.generateSignedUrl(uploadResult.getFirst()));
-            if (report.getListOfMedia() == null) {
-                ArrayList<BugMedia> bugMediaList = new ArrayList<>();
-                bugMediaList.add(bugMedia);
-                report.setListOfMedia(bugMediaList);
-            } else {
-                report.getListOfMedia().add(bugMedia);
-            }
-            updateReportStatus(report, GifStatus.COMPLETED);
-            return ResponseEntity.ok(new ResponseDTO(true, "GIF successfully created and uploaded.", bugMedia));
+    private SessionRenderer getSessionRenderer(String appId) {
+        return appMetadataCache.get(appId)
+                .map(AppMetadataDTO::getSessionRenderer)
+                .orElse(SessionRenderer.GIF);
+    }
+
+    private BugMedia attachSessionMedia(Report report, Pair<String, MediaType> uploadResult) {
+        BugMedia bugMedia = utilsService.getMediaObject(uploadResult.getFirst(), uploadResult.getSecond());
+        bugMedia.setMediaUrl(storageService.generateSignedUrl(uploadResult.getFirst()));
+        mediaThumbnailService.generateThumbnails(List.of(bugMedia));
+        if (report.getListOfMedia() == null) {
+            ArrayList<BugMedia> bugMediaList = new ArrayList<>();
+            bugMediaList.add(bugMedia);
+            report.setListOfMedia(bugMediaList);
         } else {
-            updateReportStatus(report, GifStatus.FAILED);
-            return ResponseEntity.internalServerError().body(new ResponseDTO(false, "Failed to upload the GIF after creation.", null));
+            report.getListOfMedia().add(bugMedia);
         }
+        updateGifStatus(report, GifStatus.COMPLETED);
+        return bugMedia;
     }
 
-    private void updateReportStatus(Report report, GifStatus status) {
+    public void updateGifStatus(Report report, GifStatus status) {
         report.setGifStatus(status);
         save(report);
     }
@@ -0,0 +1,280 @@
+package com.quashbugs.quash.service;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.awt.image.IndexColorModel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * A palette of at most 256 colors shared by every frame of a session GIF. The palette is built
+ * with median cut over a histogram of 15-bit colors sampled from the session, and frames are
+ * mapped through a lookup table from 15-bit color to palette index, optionally with 4x4 ordered
+ * dithering. Ordered dithering only depends on the pixel position, so unchanged pixels map to
+ * the same index in every frame and the dirty rectangles of consecutive frames still line up.
+ */
+final class SessionPalette {
+
+    private static final int COLOR_BITS = 5;
+
+    private static final int COLOR_COUNT = 1 << (3 * COLOR_BITS);
+
+    private static final int MAX_COLORS = 256;
+
+    /**
+     * Amplitude of the ordered dithering in 8-bit channel units.
+     */
+    private static final int DITHER_SPREAD = 24;
+
+    private static final int[][] BAYER_4X4 = {
+            {0, 8, 2, 10},
+            {12, 4, 14, 6},
+            {3, 11, 1, 9},
+            {15, 7, 13, 5}
+    };
+
+    private final IndexColorModel colorModel;
+
+    private final byte[] lookup;
+
+    private final boolean dither;
+
+    private SessionPalette(IndexColorModel colorModel, byte[] lookup, boolean dither) {
+        this.colorModel = colorModel;
+        this.lookup = lookup;
+        this.dither = dither;
+    }
+
+    /**
+     * Counts the colors of sampled frames.
+     */
+    static final class Histogram {
+        private final int[] counts = new int[COLOR_COUNT];
+
+        void add(BufferedImage image) {
+            int width = image.getWidth();
+            int[] row = new int[width];
+            for (int y = 0; y < image.getHeight(); y++) {
+                image.getRGB(0, y, width, 1, row, 0, width);
+                for (int rgb : row) {
+                    counts[key(rgb)]++;
+                }
+            }
+        }
+
+        SessionPalette build(boolean dither) {
+            List<ColorBox> boxes = medianCut(counts);
+            byte[] reds = new byte[boxes.size()];
+            byte[] greens = new byte[boxes.size()];
+            byte[] blues = new byte[boxes.size()];
+            for (int i = 0; i < boxes.size(); i++) {
+                int rgb = boxes.get(i).averageColor(counts);
+                reds[i] = (byte) (rgb >> 16);
+                greens[i] = (byte) (rgb >> 8);
+                blues[i] = (byte) rgb;
+            }
+            IndexColorModel colorModel = new IndexColorModel(8, boxes.size(), reds, greens, blues);
+            return new SessionPalette(colorModel, nearestColors(reds, greens, blues), dither);
+        }
+    }
+
+    IndexColorModel getColorModel() {
+        return colorModel;
+    }
+
+    /**
+     * Maps the given region of a frame to an image indexed into this palette.
+     *
+     * @param pixels packed RGB pixels of the whole frame
+     * @param width  width of the whole frame
+     * @param region region of the frame to map
+     */
+    BufferedImage map(int[] pixels, int width, Rectangle region) {
+        BufferedImage indexed = new BufferedImage(region.width, region.height, BufferedImage.TYPE_BYTE_INDEXED, colorModel);
+        byte[] target = ((DataBufferByte) indexed.getRaster().getDataBuffer()).getData();
+        int offset = 0;
+        for (int y = region.y; y < region.y + region.height; y++) {
+            int row = y * width;
+            for (int x = region.x; x < region.x + region.width; x++) {
+                int rgb = pixels[row + x];
+                target[offset++] = lookup[dither ? key(dither(rgb, x, y)) : key(rgb)];
+            }
+        }
+        return indexed;
+    }
+
+    private static int dither(int rgb, int x, int y) {
+        int offset = (BAYER_4X4[y & 3][x & 3] * 2 - 15) * DITHER_SPREAD / 32;
+        int red = clamp(((rgb >> 16) & 0xFF) + offset);
+        int green = clamp(((rgb >> 8) & 0xFF) + offset);
+        int blue = clamp((rgb & 0xFF) + offset);
+        return (red << 16) | (green << 8) | blue;
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+
+    private static int key(int rgb) {
+        return ((rgb >> 9) & 0x7C00) | ((rgb >> 6) & 0x03E0) | ((rgb >> 3) & 0x001F);
+    }
+
+    private static int expand(int channel) {
+        return (channel << 3) | (channel >> 2);
+    }
+
+    private static List<ColorBox> medianCut(int[] counts) {
+        PriorityQueue<ColorBox> splittable = new PriorityQueue<>(Comparator.comparingLong(ColorBox::priority).reversed());
+        List<ColorBox> boxes = new ArrayList<>();
+        ColorBox all = ColorBox.enclosing(counts, 0, 31, 0, 31, 0, 31);
+        if (all == null) {
+            boxes.add(new ColorBox(0, 0, 0, 0, 0, 0, 0));
+            return boxes;
+        }
+        splittable.add(all);
+        while (!splittable.isEmpty() && splittable.size() + boxes.size() < MAX_COLORS) {
+            ColorBox box = splittable.poll();
+            ColorBox[] halves = box.split(counts);
+            if (halves == null) {
+                boxes.add(box);
+                continue;
+            }
+            splittable.add(halves[0]);
+            splittable.add(halves[1]);
+        }
+        boxes.addAll(splittable);
+        return boxes;
+    }
+
+    private static byte[] nearestColors(byte[] reds, byte[] greens, byte[] blues) {
+        byte[] lookup = new byte[COLOR_COUNT];
+        for (int key = 0; key < COLOR_COUNT; key++) {
+            int red = expand(key >> 10);
+            int green = expand((key >> 5) & 0x1F);
+            int blue = expand(key & 0x1F);
+            int best = 0;
+            int bestDistance = Integer.MAX_VALUE;
+            for (int i = 0; i < reds.length && bestDistance > 0; i++) {
+                int dr = red - (reds[i] & 0xFF);
+                int dg = green - (greens[i] & 0xFF);
+                int db = blue - (blues[i] & 0xFF);
+                int distance = 2 * dr * dr + 4 * dg * dg + 3 * db * db;
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = i;
+                }
+            }
+            lookup[key] = (byte) best;
+        }
+        return lookup;
+    }
+
+    /**
+     * A box of 15-bit colors, bounded inclusively in each 5-bit channel.
+     */
+    private record ColorBox(int minRed, int maxRed, int minGreen, int maxGreen, int minBlue, int maxBlue, long population) {
+
+        /**
+         * Returns the smallest box inside the given bounds containing every counted color, or
+         * null if no color inside the bounds was counted.
+         */
+        static ColorBox enclosing(int[] counts, int minRed, int maxRed, int minGreen, int maxGreen, int minBlue, int maxBlue) {
+            int loRed = 31, hiRed = 0, loGreen = 31, hiGreen = 0, loBlue = 31, hiBlue = 0;
+            long population = 0;
+            for (int r = minRed; r <= maxRed; r++) {
+                for (int g = minGreen; g <= maxGreen; g++) {
+                    int base = (r << 10) | (g << 5);
+                    for (int b = minBlue; b <= maxBlue; b++) {
+                        int count = counts[base | b];
+                        if (count == 0) {
+                            continue;
+                        }
+                        population += count;
+                        loRed = Math.min(loRed, r);
+                        hiRed = Math.max(hiRed, r);
+                        loGreen = Math.min(loGreen, g);
+                        hiGreen = Math.max(hiGreen, g);
+                        loBlue = Math.min(loBlue, b);
+                        hiBlue = Math.max(hiBlue, b);
+                    }
+                }
+            }
+            return population == 0 ? null : new ColorBox(loRed, hiRed, loGreen, hiGreen, loBlue, hiBlue, population);
+        }
+
+        /**
+         * Boxes holding many pixels over a wide color range are split first.
+         */
+        long priority() {
+            int range = Math.max(maxRed - minRed, Math.max(maxGreen - minGreen, maxBlue - minBlue));
+            return range == 0 ? -1 : population * range;
+        }
+
+        /**
+         * Splits the box at the population median of its widest channel, or returns null if it
+         * holds a single color.
+         */
+        ColorBox[] split(int[] counts) {
+            int redRange = maxRed - minRed;
+            int greenRange = maxGreen - minGreen;
+            int blueRange = maxBlue - minBlue;
+            if (redRange == 0 && greenRange == 0 && blueRange == 0) {
+                return null;
+            }
+            int channel = greenRange >= redRange && greenRange >= blueRange ? 1 : redRange >= blueRange ? 0 : 2;
+            int min = channel == 0 ? minRed : channel == 1 ? minGreen : minBlue;
+            int max = channel == 0 ? maxRed : channel == 1 ? maxGreen : maxBlue;
+
+            long seen = 0;
+            int cut = min;
+            for (int value = min; value < max; value++) {
+                seen += slicePopulation(counts, channel, value);
+                cut = value;
+                if (seen * 2 >= population) {
+                    break;
+                }
+            }
+            ColorBox lower = channel == 0 ? enclosing(counts, minRed, cut, minGreen, maxGreen, minBlue, maxBlue)
+                    : channel == 1 ? enclosing(counts, minRed, maxRed, minGreen, cut, minBlue, maxBlue)
+                    : enclosing(counts, minRed, maxRed, minGreen, maxGreen, minBlue, cut);
+            ColorBox upper = channel == 0 ? enclosing(counts, cut + 1, maxRed, minGreen, maxGreen, minBlue, maxBlue)
+                    : channel == 1 ? enclosing(counts, minRed, maxRed, cut + 1, maxGreen, minBlue, maxBlue)
+                    : enclosing(counts, minRed, maxRed, minGreen, maxGreen, cut + 1, maxBlue);
+            return new ColorBox[]{lower, upper};
+        }
+
+        private long slicePopulation(int[] counts, int channel, int value) {
+            long sum = 0;
+            for (int r = channel == 0 ? value : minRed; r <= (channel == 0 ? value : maxRed); r++) {
+                for (int g = channel == 1 ? value : minGreen; g <= (channel == 1 ? value : maxGreen); g++) {
+                    for (int b = channel == 2 ? value : minBlue; b <= (channel == 2 ? value : maxBlue); b++) {
+                        sum += counts[(r << 10) | (g << 5) | b];
+                    }
+                }
+            }
+            return sum;
+        }
+
+        int averageColor(int[] counts) {
+            long red = 0, green = 0, blue = 0, total = 0;
+            for (int r = minRed; r <= maxRed; r++) {
+                for (int g = minGreen; g <= maxGreen; g++) {
+                    for (int b = minBlue; b <= maxBlue; b++) {
+                        int count = counts[(r << 10) | (g << 5) | b];
+                        red += (long) count * expand(r);
+                        green += (long) count * expand(g);
+                        blue += (long) count * expand(b);
+                        total += count;
+                    }
+                }
+            }
+            if (total == 0) {
+                return 0;
+            }
+            return (int) (red / total) << 16 | (int) (green / total) << 8 | (int) (blue / total);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.quashbugs.quash.service;
+
+import com.quashbugs.quash.dto.miscellaneous.TempFileMultipartDTO;
+import org.jcodec.api.awt.AWTSequenceEncoder;
+import org.jcodec.common.io.NIOUtils;
+import org.jcodec.common.io.SeekableByteChannel;
+import org.jcodec.common.model.Rational;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.stereotype.Service;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Encodes session recordings as H.264 MP4 videos with the pure Java JCodec encoder, as an
+ * alternative to {@link GifCreationService} for apps that opted in. Frames are decoded the same
+ * way as for GIFs and the video is written to a temporary file.
+ * <p>
+ * H.264 needs even dimensions and a fixed frame size, so every frame is drawn onto a canvas the
+ * size of the first frame rounded up to even dimensions.
+ */
+@Service
+public class SessionVideoService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionVideoService.class);
+
+    private static final String VIDEO_FILE_NAME = "session.mp4";
+
+    private static final String VIDEO_MIME_TYPE = "video/mp4";
+
+    private final Executor gifDecodeExecutor;
+
+    @Value("${gif.decode-ahead:4}")
+    private int decodeAhead;
+
+    @Value("${gif.temp-dir:}")
+    private String tempDir;
+
+    @Autowired
+    public SessionVideoService(@Qualifier("gifDecodeExecutor") Executor gifDecodeExecutor) {
+        this.gifDecodeExecutor = gifDecodeExecutor;
+    }
+
+    /**
+     * Creates an MP4 video from the given frames in order, showing each frame for
+     * {@code delayTime} hundredths of a second. The caller owns the returned file and must close
+     * it once it has been uploaded.
+     */
+    public TempFileMultipartDTO createVideo(List<? extends InputStreamSource> frames, int delayTime) throws IOException {
+        logger.info("Creating session video with {} bitmaps and delay time: {}", frames.size(), delayTime);
+
+        Path videoPath = createTempFile();
+        boolean completed = false;
+
+        try (SeekableByteChannel channel = NIOUtils.writableChannel(videoPath.toFile());
+             DecodeAheadFrames decoded = new DecodeAheadFrames(frames, gifDecodeExecutor, decodeAhead)) {
+            AWTSequenceEncoder encoder = new AWTSequenceEncoder(channel, Rational.R(100, delayTime));
+            BufferedImage canvas = null;
+            while (decoded.hasNext()) {
+                BufferedImage image = decoded.next();
+                if (canvas == null) {
+                    canvas = new BufferedImage(even(image.getWidth()), even(image.getHeight()), BufferedImage.TYPE_3BYTE_BGR);
+                }
+                draw(image, canvas);
+                encoder.encodeImage(canvas);
+            }
+            encoder.finish();
+            completed = true;
+            logger.info("Session video generation completed successfully with {} frames", frames.size());
+        } catch (IOException e) {
+            logger.error("An error occurred while generating the session video: {}", e.getMessage(), e);
+            throw new IOException("An error occurred while generating the session video: " + e.getMessage(), e);
+        } finally {
+            if (!completed) {
+                Files.deleteIfExists(videoPath);
+            }
+        }
+
+        return new TempFileMultipartDTO(videoPath, VIDEO_FILE_NAME, VIDEO_MIME_TYPE);
+    }
+
+    private static void draw(BufferedImage image, BufferedImage canvas) {
+        Graphics2D graphics = canvas.createGraphics();
+        try {
+            graphics.setColor(Color.BLACK);
+            graphics.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+            graphics.drawImage(image, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+    }
+
+    private static int even(int dimension) {
+        return (dimension + 1) & ~1;
+    }
+
+    private Path createTempFile() throws IOException {
+        if (tempDir == null || tempDir.isBlank()) {
+            return Files.createTempFile("quash-video-", ".mp4");
+        }
+        Path directory = Files.createDirectories(Path.of(tempDir));
+        return Files.createTempFile(directory, "quash-video-", ".mp4");
+    }
+}
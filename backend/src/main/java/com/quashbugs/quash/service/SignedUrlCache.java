@@ -0,0 +1,60 @@
+package com.quashbugs.quash.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.function.Function;
+
+import static com.quashbugs.quash.constants.Constants.SIGNED_URL_CACHE_EXPIRY_MARGIN_HOURS;
+import static com.quashbugs.quash.constants.Constants.SIGNED_URL_EXPIRY_DAYS;
+
+/**
+ * Caches signed media URLs per storage provider and object name. Entries are evicted well
+ * before the signed URL itself expires, so a cached URL is always valid for at least
+ * {@link com.quashbugs.quash.constants.Constants#SIGNED_URL_CACHE_EXPIRY_MARGIN_HOURS} hours.
+ */
+@Component
+public class SignedUrlCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SignedUrlCache.class);
+
+    private final Cache<String, String> cache;
+
+    @Autowired
+    public SignedUrlCache(@Value("${storage.signed-url.cache.ttl-hours:144}") long ttlHours,
+                          @Value("${storage.signed-url.cache.max-size:50000}") long maxSize,
+                          MeterRegistry meterRegistry) {
+        Duration maxTtl = Duration.ofDays(SIGNED_URL_EXPIRY_DAYS).minusHours(SIGNED_URL_CACHE_EXPIRY_MARGIN_HOURS);
+        Duration ttl = Duration.ofHours(ttlHours);
+        if (ttl.compareTo(maxTtl) > 0) {
+            LOGGER.warn("Signed URL cache TTL of {} hours is too close to the URL expiry, using {} hours", ttlHours, maxTtl.toHours());
+            ttl = maxTtl;
+        }
+        this.cache = Caffeine.newBuilder()
+                .expireAfterWrite(ttl)
+                .maximumSize(maxSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "signed-urls");
+    }
+
+    public String get(String provider, String objectName, Function<String, String> signer) {
+        return cache.get(key(provider, objectName), k -> signer.apply(objectName));
+    }
+
+    public void invalidate(String provider, String objectName) {
+        cache.invalidate(key(provider, objectName));
+    }
+
+    private static String key(String provider, String objectName) {
+        return provider + ":" + objectName;
+    }
+}
@@ -5,8 +5,8 @@ import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import com.quashbugs.quash.constants.Constants;
 import com.quashbugs.quash.dto.integration.SlackChannelsDTO;
+import com.quashbugs.quash.dto.miscellaneous.AppMetadataDTO;
 import com.quashbugs.quash.model.*;
-import com.quashbugs.quash.repo.ApplicationRepository;
 import com.quashbugs.quash.repo.IntegrationRepository;
 import com.quashbugs.quash.repo.TeamMemberRepository;
 import com.quashbugs.quash.util.CryptoService;
@@ -62,19 +62,19 @@ public class SlackIntegrationService {
 
     private final IntegrationRepository integrationRepository;
 
-    private final ApplicationRepository applicationRepository;
+    private final AppMetadataCache appMetadataCache;
 
     private final StorageService storageService;
 
     @Autowired
     public SlackIntegrationService(TeamMemberRepository teamMemberRepository,
                                    IntegrationRepository integrationRepository,
-                                   ApplicationRepository applicationRepository,
+                                   AppMetadataCache appMetadataCache,
                                    CryptoService cryptoService,
                                    StorageService storageService) {
         this.teamMemberRepository = teamMemberRepository;
         this.integrationRepository = integrationRepository;
-        this.applicationRepository = applicationRepository;
+        this.appMetadataCache = appMetadataCache;
         this.cryptoService = cryptoService;
         this.storageService = storageService;
     }
@@ -213,7 +213,7 @@ public class SlackIntegrationService {
     }
 
     public void checkAndPublishNotificationOnSlack(String appId, Report report) {
-        applicationRepository.findById(appId)
+        appMetadataCache.get(appId)
                 .map(app -> {
                     if (isValidSlackConfiguration(app)) {
                         String channelId = app.getIntegrationKeyMap().get(SLACK).get(Constants.channelId).toString();
@@ -227,7 +227,7 @@ public class SlackIntegrationService {
                 .orElseThrow(() -> new IllegalArgumentException("Application not found for ID: " + appId));
     }
 
-    private boolean isValidSlackConfiguration(QuashClientApplication application) {
+    private boolean isValidSlackConfiguration(AppMetadataDTO application) {
         return application.getIntegrationKeyMap() != null && application.getIntegrationKeyMap().containsKey(SLACK);
     }
 
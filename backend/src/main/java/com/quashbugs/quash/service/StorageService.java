@@ -5,6 +5,7 @@ import org.springframework.data.util.Pair;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.io.InputStream;
 
 public interface StorageService {
     Pair<String, MediaType> upload(MultipartFile mediaFile, Report report) throws IOException;
@@ -18,4 +19,21 @@ public interface StorageService {
     boolean deleteCloudMediaForChatUpload(ChatUploads chatUpload);
 
     void deleteGifBitmap(GifBitmap gifBitmap);
+
+    /**
+     * Drops the reference taken by {@link #upload} for a file that ended up not being saved.
+     */
+    void releaseUpload(String objectName);
+
+    void uploadObject(String objectName, byte[] content, String mimeType) throws IOException;
+
+    InputStream openStream(String objectName) throws IOException;
+
+    void deleteObject(String objectName);
+
+    /**
+     * Returns the {@code <organisation>/<app>} prefix the objects of the app are stored under,
+     * or {@code null} if the app is unknown.
+     */
+    String objectPrefix(String appId);
 }
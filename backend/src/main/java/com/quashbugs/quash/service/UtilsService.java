@@ -8,17 +8,19 @@ import com.quashbugs.quash.repo.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.data.util.Pair;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
+import java.io.UncheckedIOException;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.stream.Collectors;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 @Service
 public class UtilsService {
@@ -33,11 +35,11 @@ public class UtilsService {
 
     private final TeamMemberService teamMemberService;
 
-    private final ApplicationRepository applicationRepository;
+    private final AppMetadataCache appMetadataCache;
 
     private final ReportRepository reportRepository;
 
-    private final OrganisationRepository organisationRepository;
+    private final ReportingTokenRegistry reportingTokenRegistry;
 
     private final SequenceGeneratorService sequenceGeneratorService;
 
@@ -45,26 +47,44 @@ public class UtilsService {
 
     private final GifMediaRepository gifMediaRepository;
 
+    private final Executor mediaUploadExecutor;
+
+    private final Executor signedUrlExecutor;
+
+    private final MediaThumbnailService mediaThumbnailService;
+
+    @Value("${storage.signed-url.batch-size:16}")
+    private int signedUrlBatchSize;
+
+    @Value("${storage.signed-url.max-tasks-per-request:4}")
+    private int signedUrlMaxTasksPerRequest;
+
     @Autowired
     public UtilsService(
             StorageService storageService,
             CrashStorageService crashStorageService,
             UserService userService,
             TeamMemberService teamMemberService,
-            ApplicationRepository applicationRepository,
+            AppMetadataCache appMetadataCache,
             ReportRepository reportRepository,
-            OrganisationRepository organisationRepository,
-            SequenceGeneratorService sequenceGeneratorService, BugMediaRepository bugMediaRepository, GifMediaRepository gifMediaRepository) {
+            ReportingTokenRegistry reportingTokenRegistry,
+            SequenceGeneratorService sequenceGeneratorService, BugMediaRepository bugMediaRepository, GifMediaRepository gifMediaRepository,
+            @Qualifier("mediaUploadExecutor") Executor mediaUploadExecutor,
+            @Qualifier("signedUrlExecutor") Executor signedUrlExecutor,
+            MediaThumbnailService mediaThumbnailService) {
         this.storageService = storageService;
         this.crashStorageService = crashStorageService;
         this.userService = userService;
         this.teamMemberService = teamMemberService;
-        this.applicationRepository = applicationRepository;
+        this.appMetadataCache = appMetadataCache;
         this.reportRepository = reportRepository;
-        this.organisationRepository = organisationRepository;
+        this.reportingTokenRegistry = reportingTokenRegistry;
         this.sequenceGeneratorService = sequenceGeneratorService;
         this.bugMediaRepository = bugMediaRepository;
         this.gifMediaRepository = gifMediaRepository;
+        this.mediaUploadExecutor = mediaUploadExecutor;
+        this.signedUrlExecutor = signedUrlExecutor;
+        this.mediaThumbnailService = mediaThumbnailService;
     }
 
     public Report applyUpdatesToReport(Report existingReport, UpdateReportRequestDTO updateRequest) throws Exception {
@@ -125,26 +145,13 @@ public class UtilsService {
 
 
     public boolean doesAppBelongToThisOrg(String id, String orgId) {
-        Optional<QuashClientApplication> app = applicationRepository.findById(id);
-        if (app.isPresent()) {
-            if (String.valueOf(app.get().getOrganisation().getId()).equals(orgId)) {
-                return true;
-            } else {
-                return false;
-            }
-        } else {
-            return false;
-        }
+        return reportingTokenRegistry.hasApp(Long.parseLong(orgId), id) || appMetadataCache.doesAppBelongToOrg(id, orgId);
     }
 
-    public Report createReportFromRequest(ReportRequestDTO request, String orgId) {
+    public Report createReportFromRequest(ReportRequestDTO request, Organisation organisation) {
         Optional<User> teamMember = userService.findUserById(request.getReporterId());
 
-        Long orgIdValue = Long.valueOf(orgId); // Convert your orgId to Long type if it's in a different format.
-        // Ensure the organization exists, otherwise throw an exception
-        Organisation organisation = organisationRepository.findById(orgIdValue)
-                .orElseThrow(() -> new IllegalArgumentException("Organization not found!"));
-
+        String orgId = String.valueOf(organisation.getId());
         String organisationAbbreviation = organisation.getOrgAbbreviation();
         int seqNumber = sequenceGeneratorService.getNextSequenceNumber(orgId);
         String reportId = organisationAbbreviation + "-" + String.format("%03d", seqNumber);
@@ -164,39 +171,43 @@ public class UtilsService {
     }
 
     public List<BugMedia> saveMediaForReport(List<MultipartFile> mediaFiles, Report report) throws Exception {
+        List<Pair<String, MediaType>> results;
+        try {
+            results = uploadAll(mediaFiles, report);
+        } catch (IOException e) {
+            logger.error("Error uploading media file: ", e);
+            throw new Exception("Error uploading media file: " + e.getMessage());
+        }
         List<BugMedia> mediaList = new ArrayList<>();
-        for (MultipartFile mediaFile : mediaFiles) {
-            try {
-                Pair<String, MediaType> result = storageService.upload(mediaFile, report);
-                BugMedia media = new BugMedia();
-                media.setMediaRef(result.getFirst());
-                media.setMediaType(result.getSecond());
-                media.setCreatedAt(new Date());
-                mediaList.add(media);
-            } catch (IOException e) {
-                logger.error("Error uploading media file: ", e);
-                throw new Exception("Error uploading media file: " + e.getMessage());
-            }
+        for (Pair<String, MediaType> result : results) {
+            BugMedia media = new BugMedia();
+            media.setMediaRef(result.getFirst());
+            media.setMediaType(result.getSecond());
+            media.setCreatedAt(new Date());
+            mediaList.add(media);
         }
-        return saveAll(mediaList);
+        List<BugMedia> savedMedia = saveAll(mediaList);
+        mediaThumbnailService.generateThumbnails(savedMedia);
+        return savedMedia;
     }
 
     public List<GifBitmap> saveGifBitmapsForReport(List<MultipartFile> gifBitmaps, Report report) throws Exception {
+        List<Pair<String, MediaType>> results;
+        try {
+            results = uploadAll(gifBitmaps, report);
+        } catch (IOException e) {
+            logger.error("Error uploading gif bitmaps: ", e);
+            throw new Exception("Error uploading gif bitmaps: " + e.getMessage(), e);
+        }
         List<GifBitmap> bitmapsList = new ArrayList<>();
-        for (MultipartFile bitmap : gifBitmaps) {
-            try {
-                Pair<String, MediaType> result = storageService.upload(bitmap, report);
-                GifBitmap gifBitmap = GifBitmap.builder()
-                        .mediaRef(result.getFirst())
-                        .mediaType(result.getSecond())
-                        .createdAt(new Date())
-                        .build();
-
-                bitmapsList.add(gifBitmap);
-            } catch (IOException e) {
-                logger.error("Error uploading gif bitmaps: ", e);
-                throw new Exception("Error uploading gif bitmaps: " + e.getMessage(), e);
-            }
+        for (Pair<String, MediaType> result : results) {
+            GifBitmap gifBitmap = GifBitmap.builder()
+                    .mediaRef(result.getFirst())
+                    .mediaType(result.getSecond())
+                    .createdAt(new Date())
+                    .build();
+
+            bitmapsList.add(gifBitmap);
         }
         saveAllGifBitmaps(bitmapsList);
         report.setListOfGif(bitmapsList);
@@ -204,39 +215,56 @@ public class UtilsService {
         return bitmapsList;
     }
 
-    public List<byte[]> downloadMediaAsByteArrays(List<GifBitmap> gifBitmaps) throws IOException {
-        List<byte[]> filesContent = new ArrayList<>();
-
-        for (GifBitmap gifBitmap : gifBitmaps) {
-            try {
-                String mediaUrl = storageService.generateSignedUrl(gifBitmap.getMediaRef());
-                byte[] fileContent = downloadMedia(mediaUrl);
-                filesContent.add(fileContent);
-            } catch (IOException e) {
-                throw new IOException("Failed to download media: " + gifBitmap.getMediaRef(), e);
+    /**
+     * Uploads all files of a report in parallel on the media upload executor and waits for every
+     * upload to finish. Results are returned in the same order as the given files. If any upload
+     * fails, the references taken by the others are released.
+     */
+    private List<Pair<String, MediaType>> uploadAll(List<MultipartFile> files, Report report) throws IOException {
+        List<CompletableFuture<Pair<String, MediaType>>> futures = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return storageService.upload(file, report);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, mediaUploadExecutor));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            // Nothing will reference the files that did upload.
+            for (CompletableFuture<Pair<String, MediaType>> future : futures) {
+                if (!future.isCompletedExceptionally()) {
+                    storageService.releaseUpload(future.join().getFirst());
+                }
+            }
+            if (e.getCause() instanceof UncheckedIOException ioException) {
+                throw ioException.getCause();
+            } else if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
+            throw e;
         }
-
-        return filesContent;
+        return futures.stream().map(CompletableFuture::join).toList();
     }
 
-    private byte[] downloadMedia(String mediaUrl) throws IOException {
-        URL url = new URL(mediaUrl);
-        try (InputStream in = url.openStream()) {
-            ByteArrayOutputStream out = new ByteArrayOutputStream();
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-            }
-            return out.toByteArray();
-        }
+    /**
+     * Returns the bitmaps as sources read straight from storage through the provider SDK. Nothing
+     * is fetched until a source is opened, so the caller decides how far ahead to read.
+     */
+    public List<InputStreamSource> getGifBitmapSources(List<GifBitmap> gifBitmaps) {
+        return gifBitmaps.stream()
+                .map(GifBitmap::getMediaRef)
+                .<InputStreamSource>map(mediaRef -> () -> storageService.openStream(mediaRef))
+                .toList();
     }
 
-    public BugMedia getMediaObject(String mediaRef) {
+    public BugMedia getMediaObject(String mediaRef, MediaType mediaType) {
         BugMedia bugMedia = new BugMedia();
         bugMedia.setMediaRef(mediaRef);
-        bugMedia.setMediaType(MediaType.GIF);
+        bugMedia.setMediaType(mediaType);
         bugMedia.setCreatedAt(new Date());
         save(bugMedia);
         return bugMedia;
@@ -267,21 +295,40 @@ public class UtilsService {
         }
     }
 
+    /**
+     * Signs the given media refs on the signed URL executor. Refs are split into batches of at
+     * least {@code storage.signed-url.batch-size}, and a single call never submits more than
+     * {@code storage.signed-url.max-tasks-per-request} tasks.
+     */
     public Map<String, String> generateSignedUrls(List<String> mediaRefs) {
-        List<CompletableFuture<Pair<String, String>>> futures = new ArrayList<>();
-        for (String mediaRef : mediaRefs) {
-            futures.add(
-                    CompletableFuture.supplyAsync(() -> {
-                        String signedUrl = storageService.generateSignedUrl(mediaRef);
-                        return Pair.of(mediaRef, signedUrl);
-                    })
-            );
+        List<String> uniqueRefs = mediaRefs.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        Map<String, String> signedUrls = new HashMap<>();
+        if (uniqueRefs.isEmpty()) {
+            return signedUrls;
+        }
+        int tasks = Math.max(1, signedUrlMaxTasksPerRequest);
+        int batchSize = Math.max(signedUrlBatchSize, (uniqueRefs.size() + tasks - 1) / tasks);
+
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<>();
+        for (int start = 0; start < uniqueRefs.size(); start += batchSize) {
+            List<String> batch = uniqueRefs.subList(start, Math.min(start + batchSize, uniqueRefs.size()));
+            futures.add(CompletableFuture.supplyAsync(() -> signBatch(batch), signedUrlExecutor));
         }
-        List<Pair<String, String>> results = futures.stream()
-                .map(CompletableFuture::join).toList();
+        for (CompletableFuture<Map<String, String>> future : futures) {
+            signedUrls.putAll(future.join());
+        }
+        return signedUrls;
+    }
 
-        return results.stream()
-                .collect(Collectors.toMap(Pair::getFirst, Pair::getSecond));
+    private Map<String, String> signBatch(List<String> mediaRefs) {
+        Map<String, String> signedUrls = new HashMap<>();
+        for (String mediaRef : mediaRefs) {
+            signedUrls.put(mediaRef, storageService.generateSignedUrl(mediaRef));
+        }
+        return signedUrls;
     }
 
     public String extractDomain(String email) {
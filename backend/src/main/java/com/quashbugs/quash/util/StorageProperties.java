@@ -42,4 +42,10 @@ public class StorageProperties {
 
     @Value("${azure.account.key:default}")
     private String azureAccountKey;
+
+    @Value("${storage.upload.max-concurrency:16}")
+    private int uploadMaxConcurrency;
+
+    @Value("${storage.upload.part-size-bytes:8388608}")
+    private long uploadPartSize;
 }
@@ -0,0 +1,45 @@
+package com.quashbugs.quash.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A lock-free token bucket, implemented as a generic cell rate algorithm: instead of a token
+ * count it keeps the time at which the bucket would be full again, so taking a token is a single
+ * compare-and-set. Times are {@link System#nanoTime()} values.
+ */
+public final class TokenBucket {
+
+    private final long emissionIntervalNanos;
+
+    private final long capacityNanos;
+
+    private final AtomicLong theoreticalArrivalNanos;
+
+    /**
+     * Creates a full bucket holding {@code capacity} tokens that refills one token every
+     * {@code emissionIntervalNanos}.
+     */
+    public TokenBucket(long emissionIntervalNanos, int capacity, long nowNanos) {
+        this.emissionIntervalNanos = emissionIntervalNanos;
+        this.capacityNanos = emissionIntervalNanos * Math.max(1, capacity);
+        this.theoreticalArrivalNanos = new AtomicLong(nowNanos);
+    }
+
+    /**
+     * Takes a token. Returns 0 if one was available, otherwise the nanoseconds until one will be;
+     * no token is taken in that case.
+     */
+    public long tryAcquire(long nowNanos) {
+        while (true) {
+            long arrival = theoreticalArrivalNanos.get();
+            long nextArrival = Math.max(arrival, nowNanos) + emissionIntervalNanos;
+            long waitNanos = nextArrival - nowNanos - capacityNanos;
+            if (waitNanos > 0) {
+                return waitNanos;
+            }
+            if (theoreticalArrivalNanos.compareAndSet(arrival, nextArrival)) {
+                return 0;
+            }
+        }
+    }
+}